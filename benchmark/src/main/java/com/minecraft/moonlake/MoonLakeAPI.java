@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake;
+
+import com.minecraft.moonlake.api.event.MoonLakeListener;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredListener;
+
+// 基准测试桩类: 直接注册到事件类的处理器列表
+public final class MoonLakeAPI {
+
+    private MoonLakeAPI() {
+    }
+
+    public static void registerEvent(Class<? extends Event> event, MoonLakeListener listener, EventPriority priority, EventExecutor executor, Plugin plugin, boolean ignoreCancelled) {
+        try {
+            HandlerList handlerList = (HandlerList) event.getMethod("getHandlerList").invoke(null);
+            handlerList.register(new RegisteredListener(listener, executor, priority, plugin, ignoreCancelled));
+        } catch (Exception e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.benchmark;
+
+import com.minecraft.moonlake.script.ScriptPlugin;
+import com.minecraft.moonlake.script.api.MoonLakeScriptFiles;
+import com.minecraft.moonlake.script.bus.MessageBus;
+import com.minecraft.moonlake.script.execute.ScriptScheduler;
+import com.minecraft.moonlake.script.execute.ScriptWatchdog;
+import com.minecraft.moonlake.script.listener.EventDispatcher;
+import com.minecraft.moonlake.script.state.StateEvictor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Level;
+
+// 基准测试使用的脚本插件: 不经过 onEnable, 直接提供加载器需要的组件
+public class BenchmarkPlugin extends ScriptPlugin {
+
+    private final File dataFolder;
+    private final EventDispatcher eventDispatcher;
+    private final ScriptWatchdog watchdog;
+    private final ScriptScheduler scheduler;
+    private final ExecutorService filePool;
+    private final StateEvictor stateEvictor;
+    private final MessageBus messageBus;
+
+    public BenchmarkPlugin() {
+        try {
+            this.dataFolder = Files.createTempDirectory("MoonLakeScript").toFile();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        this.eventDispatcher = new EventDispatcher(this);
+        this.watchdog = new ScriptWatchdog(getLogger(), 0L);
+        this.scheduler = new ScriptScheduler(getLogger());
+        this.filePool = MoonLakeScriptFiles.newPool(1);
+        this.stateEvictor = new StateEvictor();
+        this.stateEvictor.registerEvents(this);
+        this.messageBus = new MessageBus(getLogger(), 4096, 1024);
+        this.getLogger().setLevel(Level.WARNING);
+        // 持久化代码缓存写入工作目录并在多次运行之间保留, 基准测试以及回归测试不使用
+        this.getConfig().set("engine.code-cache", false);
+    }
+
+    @Override
+    public File getDataFolder() {
+        return dataFolder;
+    }
+
+    @Override
+    public EventDispatcher getEventDispatcher() {
+        return eventDispatcher;
+    }
+
+    @Override
+    public ScriptWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    @Override
+    public ScriptScheduler getScheduler() {
+        return scheduler;
+    }
+
+    @Override
+    public ExecutorService getFilePool() {
+        return filePool;
+    }
+
+    @Override
+    public StateEvictor getStateEvictor() {
+        return stateEvictor;
+    }
+
+    @Override
+    public MessageBus getMessageBus() {
+        return messageBus;
+    }
+}
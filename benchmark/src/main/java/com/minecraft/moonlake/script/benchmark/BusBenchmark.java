@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.benchmark;
+
+import com.minecraft.moonlake.script.bus.MessageBus;
+import com.minecraft.moonlake.script.bus.Subscription;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+// 消息总线: 每次发布一批消息后在主线程批量交付, 以及链表队列对照组
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BusBenchmark {
+
+    private final static int BATCH = 64;
+
+    @Param({ "1", "16" })
+    private int subscribers;
+
+    private MessageBus bus;
+    private BiConsumer<Object, String>[] handlers;
+    private Queue<Object[]> queue;
+    private Object message;
+    private long received;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        this.bus = new MessageBus(Logger.getLogger("BusBenchmark"), 4096, 4096);
+        this.handlers = new BiConsumer[subscribers];
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.message = "message";
+        for(int i = 0; i < subscribers; i++) {
+            handlers[i] = (message, topic) -> received++;
+            // 一半的订阅使用通配符
+            String pattern = i % 2 == 0 ? "game.arena.start" : "game.*.start";
+            bus.subscribe(new Subscription("script" + i, pattern, handlers[i], false, null, null, null));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        bus.shutdown();
+    }
+
+    @Benchmark
+    public long publishDrain() {
+        for(int i = 0; i < BATCH; i++)
+            bus.publish("game.arena.start", message);
+        bus.drain();
+        return received;
+    }
+
+    @Benchmark
+    public long queueDrain() {
+        // 对照组: 每条消息分配一个节点以及一个数组, 交付时逐个订阅处理
+        for(int i = 0; i < BATCH; i++)
+            queue.offer(new Object[] { "game.arena.start", message });
+        Object[] element;
+        while((element = queue.poll()) != null)
+            for(BiConsumer<Object, String> handler : handlers)
+                handler.accept(element[1], (String) element[0]);
+        return received;
+    }
+}
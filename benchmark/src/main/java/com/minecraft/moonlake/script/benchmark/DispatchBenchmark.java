@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.benchmark;
+
+import com.minecraft.moonlake.script.engine.NashornEngineProvider;
+import com.minecraft.moonlake.script.execute.ExecutorFunction;
+import com.minecraft.moonlake.script.execute.ExecutorMethod;
+import com.minecraft.moonlake.script.listener.EventFilter;
+import com.minecraft.moonlake.script.listener.EventListener;
+import org.bukkit.World;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventException;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.script.Bindings;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// 单个脚本监听器的调用开销: EventListener.execute -> ExecutorFunction / ExecutorMethod
+// 以及过滤器拒绝事件时不进入脚本引擎的开销
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    private Invocable invocable;
+    private PlayerMoveEvent event;
+    private EventListener<ExecutorFunction> functionListener;
+    private EventListener<ExecutorMethod> methodListener;
+    private EventListener<ExecutorFunction> filteredListener;
+
+    @Setup
+    public void setup() throws Exception {
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName("nashorn");
+        NashornEngineProvider provider = new NashornEngineProvider();
+        engine.eval("var count = 0;" +
+                "function handler(event) { count++; }" +
+                "var listener = { handler: function (event) { count++; } };");
+        Bindings scope = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+        this.invocable = (Invocable) engine;
+        this.event = new PlayerMoveEvent(new BenchmarkPlayer(() -> "world"));
+        this.functionListener = new EventListener<>(new ExecutorFunction(provider, invocable, scope, "handler"), PlayerMoveEvent.class);
+        this.methodListener = new EventListener<>(new ExecutorMethod(provider, invocable, scope.get("listener"), "handler"), PlayerMoveEvent.class);
+        this.filteredListener = new EventListener<>(new ExecutorFunction(provider, invocable, scope, "handler"), PlayerMoveEvent.class, null, null, false,
+                EventFilter.compile(PlayerMoveEvent.class, Collections.singletonMap("worlds", "world_nether")));
+    }
+
+    @Benchmark
+    public Object invokeFunction() throws Exception {
+        // 对照组: 每次按名称查找函数并分配参数数组
+        return invocable.invokeFunction("handler", event);
+    }
+
+    @Benchmark
+    public void executeFunction() throws EventException {
+        functionListener.execute(null, event);
+    }
+
+    @Benchmark
+    public void executeMethod() throws EventException {
+        methodListener.execute(null, event);
+    }
+
+    @Benchmark
+    public void executeFiltered() throws EventException {
+        // 世界不匹配, 事件在 Java 侧被过滤
+        filteredListener.execute(null, event);
+    }
+
+    final static class BenchmarkPlayer implements Player {
+
+        private final static UUID ID = UUID.randomUUID();
+
+        private final World world;
+
+        BenchmarkPlayer(World world) {
+            this.world = world;
+        }
+
+        @Override
+        public String getName() {
+            return "benchmark";
+        }
+
+        @Override
+        public boolean hasPermission(String name) {
+            return false;
+        }
+
+        @Override
+        public boolean isSneaking() {
+            return false;
+        }
+
+        @Override
+        public int getEntityId() {
+            return 1;
+        }
+
+        @Override
+        public UUID getUniqueId() {
+            return ID;
+        }
+
+        @Override
+        public EntityType getType() {
+            return EntityType.PLAYER;
+        }
+
+        @Override
+        public World getWorld() {
+            return world;
+        }
+
+        @Override
+        public void sendMessage(String message) {
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.benchmark;
+
+import com.minecraft.moonlake.script.engine.ScriptEngineProvider;
+import com.minecraft.moonlake.script.engine.ScriptEngineRegistry;
+import com.minecraft.moonlake.script.execute.ExecutorFunction;
+import com.minecraft.moonlake.script.listener.EventListener;
+import org.bukkit.event.EventException;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import java.util.concurrent.TimeUnit;
+
+// 同一个脚本在不同引擎提供者上的吞吐量: 计算密集的函数以及事件处理器
+// GraalJS 只有在 GraalVM 上运行时才会 JIT 编译, 普通 JDK 上为解释执行
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark {
+
+    @Param({ "nashorn", "graaljs" })
+    private String provider;
+
+    private ScriptEngineProvider engineProvider;
+    private ScriptContext context;
+    private Object compute;
+    private PlayerMoveEvent event;
+    private EventListener<ExecutorFunction> listener;
+
+    private final static String SOURCE =
+            "var count = 0;" +
+            "function compute(n) {" +
+            "    var sum = 0;" +
+            "    for (var i = 0; i < n; i++)" +
+            "        sum += Math.sqrt(i) * (i & 7);" +
+            "    return sum;" +
+            "}" +
+            "function handler(event) {" +
+            "    if (event.getPlayer().getName().length > 0) count++;" +
+            "}";
+
+    @Setup
+    public void setup() throws Exception {
+        this.engineProvider = ScriptEngineRegistry.INSTANCE.getProvider(provider);
+        ScriptEngine engine = engineProvider.createEngine(EngineBenchmark.class.getClassLoader());
+        this.context = engineProvider.createContext(engine);
+        engine.setContext(context);
+        engineProvider.compile(engine, "engine.js", SOURCE).eval(context);
+        this.compute = context.getAttribute("compute", ScriptContext.ENGINE_SCOPE);
+        this.event = new PlayerMoveEvent(new DispatchBenchmark.BenchmarkPlayer(() -> "world"));
+        ExecutorFunction function = new ExecutorFunction(engineProvider, (Invocable) engine, context.getBindings(ScriptContext.ENGINE_SCOPE), "handler");
+        function.resolve();
+        this.listener = new EventListener<>(function, PlayerMoveEvent.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        engineProvider.release(context);
+        engineProvider.close();
+    }
+
+    @Benchmark
+    public Object compute() throws Exception {
+        // 脚本内 1000 次循环的数值计算
+        return engineProvider.call(compute, 1000);
+    }
+
+    @Benchmark
+    public void dispatch() throws EventException {
+        // 事件处理器调用以及脚本访问 Java 对象
+        listener.execute(null, event);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.benchmark;
+
+import com.minecraft.moonlake.script.engine.NashornEngineProvider;
+import com.minecraft.moonlake.script.execute.ExecutorFunction;
+import com.minecraft.moonlake.script.listener.EventDispatcher;
+import com.minecraft.moonlake.script.listener.EventListener;
+import com.minecraft.moonlake.script.listener.EventMapping;
+import org.bukkit.event.EventException;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.player.PlayerEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.script.Bindings;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import java.util.concurrent.TimeUnit;
+
+// 事件分发器的扇出开销: 一次事件触发分发到 N 个脚本监听器
+// hierarchy: 监听器订阅抽象的 PlayerEvent, 由通道的分发表查找接收 PlayerMoveEvent 的监听器
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanoutBenchmark {
+
+    @Param({ "1", "16", "64" })
+    private int listeners;
+
+    @Param({ "exact", "hierarchy" })
+    private String subscription;
+
+    private EventDispatcher dispatcher;
+    private PlayerMoveEvent event;
+
+    @Setup
+    public void setup() throws Exception {
+        ScriptEngine engine = new ScriptEngineManager().getEngineByName("nashorn");
+        NashornEngineProvider provider = new NashornEngineProvider();
+        StringBuilder source = new StringBuilder("var count = 0;");
+        for(int i = 0; i < listeners; i++)
+            source.append("function handler").append(i).append("(event) { count++; }");
+        engine.eval(source.toString());
+        Bindings scope = engine.getBindings(ScriptContext.ENGINE_SCOPE);
+        this.dispatcher = new EventDispatcher(new BenchmarkPlugin());
+        this.event = new PlayerMoveEvent();
+        if(!EventMapping.INSTANCE.initialized("PlayerEvent"))
+            EventMapping.INSTANCE.initalize();
+        Class<? extends Event> type = "hierarchy".equals(subscription) ? PlayerEvent.class : PlayerMoveEvent.class;
+        for(int i = 0; i < listeners; i++) {
+            ExecutorFunction function = new ExecutorFunction(provider, (Invocable) engine, scope, "handler" + i);
+            dispatcher.register(new EventListener<>(function, type), EventPriority.NORMAL, false);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        dispatcher.unregisterAll();
+    }
+
+    @Benchmark
+    public void fire() throws EventException {
+        PlayerMoveEvent.getHandlerList().fire(event);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.benchmark;
+
+import com.minecraft.moonlake.script.api.MoonLakeScriptLoader;
+import com.minecraft.moonlake.script.listener.EventMapping;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+// 脚本加载器的加载耗时: 全新加载器 (仅持久化代码缓存) 以及重新加载 (内存编译缓存)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoaderBenchmark {
+
+    @Param({ "isolated", "shared" })
+    private String mode;
+
+    @Param({ "16" })
+    private int scripts;
+
+    private BenchmarkPlugin plugin;
+    private MoonLakeScriptLoader reloadLoader;
+
+    @Setup
+    public void setup() throws Exception {
+        if(!EventMapping.INSTANCE.initialized("PlayerMoveEvent"))
+            EventMapping.INSTANCE.initalize();
+        this.plugin = new BenchmarkPlugin();
+        this.plugin.getConfig().set("engine.mode", mode);
+        File scriptDir = new File(plugin.getDataFolder(), "scripts");
+        scriptDir.mkdirs();
+        for(int i = 0; i < scripts; i++) {
+            String source = "var moves = 0;\n" +
+                    "function distance(a, b) { return Math.sqrt(a * a + b * b); }\n" +
+                    "plugin.registerListener({\n" +
+                    "    event: \"PlayerMoveEvent\",\n" +
+                    "    handler: function (event) { moves += distance(1, 2); }\n" +
+                    "});\n" +
+                    "plugin.setUnloadHook(function () { moves = 0; });\n";
+            Files.write(new File(scriptDir, "script" + i + ".js").toPath(), source.getBytes(StandardCharsets.UTF_8));
+        }
+        this.reloadLoader = new MoonLakeScriptLoader(plugin);
+    }
+
+    @Benchmark
+    public void loadFresh() {
+        MoonLakeScriptLoader loader = new MoonLakeScriptLoader(plugin);
+        loader.loadScript();
+        loader.unloadAll();
+    }
+
+    @Benchmark
+    public void reload() {
+        reloadLoader.loadScript();
+        reloadLoader.unloadAll();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.benchmark;
+
+import com.minecraft.moonlake.script.execute.ScriptScheduler;
+import com.minecraft.moonlake.script.execute.ScriptTask;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// 脚本任务时间轮: N 个重复任务时每 tick 的推进开销, 以及单个任务的调度和取消开销
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchedulerBenchmark {
+
+    @Param({ "1000", "10000" })
+    private int timers;
+
+    private ScriptScheduler scheduler;
+    private long count;
+    private int scheduled;
+
+    @Setup
+    public void setup() {
+        this.scheduler = new ScriptScheduler(Logger.getLogger("SchedulerBenchmark"));
+        // 周期为 20 tick 并且分散开始, 每 tick 约有 N / 20 个任务到期
+        for(int i = 0; i < timers; i++)
+            scheduler.schedule(() -> count++, null, null, null, false, i % 20, 20L);
+        scheduler.tick();
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Benchmark
+    public void tick() {
+        scheduler.tick();
+    }
+
+    @Benchmark
+    public void scheduleAndCancel() {
+        // 延迟较长的任务在放入时间轮后立即取消
+        ScriptTask task = scheduler.schedule(() -> count++, null, null, null, false, 6000L, 0L);
+        task.cancel();
+        // 已取消的任务在下一次 tick 时才会从待放入队列丢弃, 定期推进避免队列无限增长
+        if((++scheduled & 1023) == 0)
+            scheduler.tick();
+    }
+}
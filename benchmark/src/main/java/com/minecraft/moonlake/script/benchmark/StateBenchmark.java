@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.benchmark;
+
+import com.minecraft.moonlake.script.state.StateMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// 脚本状态表: 以 UUID / 实体 id 为键的开放寻址表, 以及 HashMap 对照组
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateBenchmark {
+
+    @Param({ "100", "10000" })
+    private int entries;
+
+    private UUID[] players;
+    private StateMap playerMap;
+    private StateMap entityMap;
+    private Map<UUID, Object> hashMap;
+    private int index;
+
+    @Setup
+    public void setup() {
+        this.players = new UUID[entries];
+        this.playerMap = new StateMap("players", StateMap.Type.PLAYER, 0L, 0);
+        this.entityMap = new StateMap("entities", StateMap.Type.ENTITY, 0L, 0);
+        this.hashMap = new HashMap<>();
+        for(int i = 0; i < entries; i++) {
+            players[i] = UUID.randomUUID();
+            playerMap.put(players[i], i);
+            entityMap.put(i, i);
+            hashMap.put(players[i], i);
+        }
+    }
+
+    @Benchmark
+    public Object playerGet() {
+        return playerMap.get(players[index++ % entries]);
+    }
+
+    @Benchmark
+    public Object entityGet() {
+        return entityMap.get(index++ % entries);
+    }
+
+    @Benchmark
+    public Object hashMapGet() {
+        // 对照组
+        return hashMap.get(players[index++ % entries]);
+    }
+
+    @Benchmark
+    public Object playerPut() {
+        return playerMap.put(players[index++ % entries], index);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.bukkit.configuration.file;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// 基准测试桩类: 内存中的配置, 未设置的键返回默认值
+public class FileConfiguration {
+
+    private final Map<String, Object> valueMap = new HashMap<>();
+
+    public void set(String path, Object value) {
+        valueMap.put(path, value);
+    }
+
+    public Object get(String path, Object def) {
+        return valueMap.getOrDefault(path, def);
+    }
+
+    public String getString(String path, String def) {
+        Object value = valueMap.get(path);
+        return value != null ? value.toString() : def;
+    }
+
+    public int getInt(String path, int def) {
+        Object value = valueMap.get(path);
+        return value instanceof Number ? ((Number) value).intValue() : def;
+    }
+
+    public long getLong(String path, long def) {
+        Object value = valueMap.get(path);
+        return value instanceof Number ? ((Number) value).longValue() : def;
+    }
+
+    public double getDouble(String path, double def) {
+        Object value = valueMap.get(path);
+        return value instanceof Number ? ((Number) value).doubleValue() : def;
+    }
+
+    public boolean getBoolean(String path, boolean def) {
+        Object value = valueMap.get(path);
+        return value instanceof Boolean ? (Boolean) value : def;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<String> getStringList(String path) {
+        Object value = valueMap.get(path);
+        return value instanceof List ? (List<String>) value : new ArrayList<>();
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.bukkit.event;
+
+// 基准测试桩类
+public abstract class Event {
+
+    private final boolean async;
+
+    public Event() {
+        this(false);
+    }
+
+    public Event(boolean isAsync) {
+        this.async = isAsync;
+    }
+
+    public String getEventName() {
+        return getClass().getSimpleName();
+    }
+
+    public abstract HandlerList getHandlers();
+
+    public final boolean isAsynchronous() {
+        return async;
+    }
+}
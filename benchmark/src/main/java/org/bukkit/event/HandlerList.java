@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.bukkit.event;
+
+import org.bukkit.plugin.RegisteredListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// 基准测试桩类: 与 Bukkit 一样在修改后重新烘焙为数组, 分发时遍历数组
+public class HandlerList {
+
+    private final static ArrayList<HandlerList> allLists = new ArrayList<>();
+
+    private final Map<Listener, RegisteredListener> handlerMap = new LinkedHashMap<>();
+    private volatile RegisteredListener[] handlers = new RegisteredListener[0];
+
+    public HandlerList() {
+        synchronized (allLists) {
+            allLists.add(this);
+        }
+    }
+
+    public static ArrayList<HandlerList> getHandlerLists() {
+        synchronized (allLists) {
+            return new ArrayList<>(allLists);
+        }
+    }
+
+    public synchronized void register(RegisteredListener listener) {
+        handlerMap.put(listener.getListener(), listener);
+        bake();
+    }
+
+    public synchronized void unregister(Listener listener) {
+        if(handlerMap.remove(listener) != null)
+            bake();
+    }
+
+    public synchronized void bake() {
+        handlers = handlerMap.values().toArray(new RegisteredListener[0]);
+    }
+
+    public RegisteredListener[] getRegisteredListeners() {
+        return handlers;
+    }
+
+    public int size() {
+        return handlers.length;
+    }
+
+    public void fire(Event event) throws EventException {
+        // 桩类专用: 模拟 PluginManager.callEvent 的分发循环
+        RegisteredListener[] handlers = this.handlers;
+        for(int i = 0; i < handlers.length; i++)
+            handlers[i].callEvent(event);
+    }
+
+    @Override
+    public String toString() {
+        return "HandlerList" + Arrays.toString(handlers);
+    }
+}
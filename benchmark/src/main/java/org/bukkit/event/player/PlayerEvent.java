@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.bukkit.event.player;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+
+// 基准测试桩类
+public abstract class PlayerEvent extends Event {
+
+    protected Player player;
+
+    public PlayerEvent() {
+    }
+
+    public PlayerEvent(Player player) {
+        this.player = player;
+    }
+
+    public PlayerEvent(boolean async) {
+        super(async);
+    }
+
+    public final Player getPlayer() {
+        return player;
+    }
+}
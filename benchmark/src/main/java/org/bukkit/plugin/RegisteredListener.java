@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.bukkit.plugin;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+
+// 基准测试桩类
+public class RegisteredListener {
+
+    private final Listener listener;
+    private final EventPriority priority;
+    private final Plugin plugin;
+    private final EventExecutor executor;
+    private final boolean ignoreCancelled;
+
+    public RegisteredListener(Listener listener, EventExecutor executor, EventPriority priority, Plugin plugin, boolean ignoreCancelled) {
+        this.listener = listener;
+        this.priority = priority;
+        this.plugin = plugin;
+        this.executor = executor;
+        this.ignoreCancelled = ignoreCancelled;
+    }
+
+    public Listener getListener() {
+        return listener;
+    }
+
+    public Plugin getPlugin() {
+        return plugin;
+    }
+
+    public EventPriority getPriority() {
+        return priority;
+    }
+
+    public boolean isIgnoringCancelled() {
+        return ignoreCancelled;
+    }
+
+    public void callEvent(Event event) throws EventException {
+        executor.execute(listener, event);
+    }
+}
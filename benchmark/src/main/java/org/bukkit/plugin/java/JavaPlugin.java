@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.bukkit.plugin.java;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+// 基准测试桩类: 数据目录默认为临时目录下的插件名目录
+public abstract class JavaPlugin implements Plugin {
+
+    private final FileConfiguration config = new FileConfiguration();
+    private final Logger logger = Logger.getLogger(getClass().getSimpleName());
+
+    public JavaPlugin() {
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    @Override
+    public File getDataFolder() {
+        return new File(System.getProperty("java.io.tmpdir"), getName());
+    }
+
+    @Override
+    public FileConfiguration getConfig() {
+        return config;
+    }
+
+    @Override
+    public Logger getLogger() {
+        return logger;
+    }
+
+    public void saveDefaultConfig() {
+    }
+
+    public Server getServer() {
+        return Bukkit.getServer();
+    }
+
+    public PluginDescriptionFile getDescription() {
+        return new PluginDescriptionFile();
+    }
+
+    public void onEnable() {
+    }
+
+    public void onDisable() {
+    }
+
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        return false;
+    }
+}
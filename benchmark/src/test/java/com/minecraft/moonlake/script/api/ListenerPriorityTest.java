@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.api;
+
+import com.minecraft.moonlake.script.benchmark.BenchmarkPlugin;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// 同一个处理器以不同的优先度或者忽略已阻止注册到同一个事件时, 每一次注册都是独立的监听器
+public class ListenerPriorityTest {
+
+    private final static List<String> CALLS = Collections.synchronizedList(new ArrayList<>());
+
+    private MoonLakeScriptLoader loader;
+    private MoonLakeScript script;
+
+    public static void call(String name) {
+        CALLS.add(name);
+    }
+
+    @Before
+    public void setup() throws Exception {
+        BenchmarkPlugin plugin = new BenchmarkPlugin();
+        File folder = new File(plugin.getDataFolder(), "scripts");
+        folder.mkdirs();
+        String source = "function onMove(event) { Java.type('" + getClass().getName() + "').call('move'); }\n";
+        Files.write(new File(folder, "a.js").toPath(), source.getBytes(StandardCharsets.UTF_8));
+        CALLS.clear();
+        loader = new MoonLakeScriptLoader(plugin);
+        loader.loadScript();
+        script = loader.getScript("a");
+    }
+
+    @After
+    public void tearDown() {
+        loader.unloadAll();
+    }
+
+    @Test
+    public void sameHandlerAtTwoPriorities() throws Exception {
+        assertTrue(script.registerListener("onMove", EventPriority.LOW, false, PlayerMoveEvent.class));
+        assertTrue(script.registerListener("onMove", EventPriority.HIGH, false, PlayerMoveEvent.class));
+        assertTrue(script.registerListener("onMove", EventPriority.HIGH, true, PlayerMoveEvent.class));
+        // 完全相同的注册仍然只有一次
+        assertFalse(script.registerListener("onMove", EventPriority.HIGH, false, PlayerMoveEvent.class));
+        assertEquals(3, script.getListenerCount());
+        PlayerMoveEvent.getHandlerList().fire(new PlayerMoveEvent());
+        assertEquals(Arrays.asList("move", "move", "move"), CALLS);
+    }
+
+    @Test
+    public void unregisterRemovesAllPriorities() throws Exception {
+        script.registerListener("onMove", EventPriority.LOW, false, PlayerMoveEvent.class);
+        script.registerListener("onMove", EventPriority.HIGH, false, PlayerMoveEvent.class);
+        assertTrue(script.unregisterListener("onMove", PlayerMoveEvent.class));
+        assertEquals(0, script.getListenerCount());
+        PlayerMoveEvent.getHandlerList().fire(new PlayerMoveEvent());
+        assertEquals(Collections.emptyList(), CALLS);
+        assertEquals(0, PlayerMoveEvent.getHandlerList().getRegisteredListeners().length);
+    }
+}
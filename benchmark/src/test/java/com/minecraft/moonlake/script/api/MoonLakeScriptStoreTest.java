@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.api;
+
+import com.minecraft.moonlake.script.benchmark.BenchmarkPlugin;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+
+// 卸载时在 I/O 线程写入剩余的修改, 重新打开同一个存储会等待关闭完成
+public class MoonLakeScriptStoreTest {
+
+    private BenchmarkPlugin plugin;
+    private MoonLakeScriptLoader loader;
+
+    @Before
+    public void setup() throws Exception {
+        plugin = new BenchmarkPlugin();
+        File folder = new File(plugin.getDataFolder(), "scripts");
+        folder.mkdirs();
+        Files.write(new File(folder, "a.js").toPath(), "// store\n".getBytes(StandardCharsets.UTF_8));
+        loader = new MoonLakeScriptLoader(plugin);
+        loader.loadScript();
+    }
+
+    @After
+    public void tearDown() {
+        loader.unloadAll();
+    }
+
+    @Test
+    public void reopenSeesWritesFromUnload() {
+        MoonLakeScriptStore store = loader.getScript("a").getStore();
+        for(int i = 0; i < 1000; i++)
+            store.put("k" + i, "v" + i);
+        store.remove("k0");
+        // 修改尚未写入日志, 卸载后立即重新加载
+        loader.unloadAll();
+        loader.loadScript();
+        MoonLakeScriptStore reopened = loader.getScript("a").getStore();
+        assertEquals(999, reopened.size());
+        assertEquals("v999", reopened.get("k999"));
+        assertEquals(null, reopened.get("k0"));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.api;
+
+import com.minecraft.moonlake.script.benchmark.BenchmarkPlugin;
+import com.minecraft.moonlake.script.listener.EventMapping;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+// 重新加载时新的脚本执行失败则保留旧的脚本, 执行成功才替换
+public class ReloadScriptTest {
+
+    private final static List<String> CALLS = Collections.synchronizedList(new ArrayList<>());
+
+    private BenchmarkPlugin plugin;
+    private MoonLakeScriptLoader loader;
+    private File folder;
+    private File file;
+
+    public static void call(String name) {
+        CALLS.add(name);
+    }
+
+    @Before
+    public void setup() throws Exception {
+        if(!EventMapping.INSTANCE.initialized("PlayerMoveEvent"))
+            EventMapping.INSTANCE.initalize();
+        plugin = new BenchmarkPlugin();
+        folder = new File(plugin.getDataFolder(), "scripts");
+        folder.mkdirs();
+        file = new File(folder, "a.js");
+        write("v1", "");
+        CALLS.clear();
+        loader = new MoonLakeScriptLoader(plugin);
+        loader.loadScript();
+    }
+
+    @After
+    public void tearDown() {
+        loader.unloadAll();
+    }
+
+    private void write(String version, String tail) throws Exception {
+        String source = "plugin.store.put('version', '" + version + "');\n" +
+                "function onMove(event) { Java.type('" + getClass().getName() + "').call('" + version + "'); }\n" +
+                "plugin.registerListener('onMove', org.bukkit.event.EventPriority.NORMAL, false, Java.type('org.bukkit.event.player.PlayerMoveEvent').class);\n" +
+                tail;
+        Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void runtimeErrorKeepsPreviousScript() throws Exception {
+        MoonLakeScript previous = loader.getScript("a");
+        write("v2", "undefinedFunction();\n");
+        loader.reloadScript(Collections.singletonList(file));
+        assertSame(previous, loader.getScript("a"));
+        // 失败的脚本与旧的脚本共享键值存储, 卸载失败的脚本不能关闭旧的脚本仍在使用的存储
+        previous.getStore().put("version", "v1");
+        assertEquals("v1", previous.getStore().get("version"));
+        PlayerMoveEvent.getHandlerList().fire(new PlayerMoveEvent());
+        assertEquals(Collections.singletonList("v1"), CALLS);
+    }
+
+    @Test
+    public void successfulReloadReplacesScript() throws Exception {
+        MoonLakeScript previous = loader.getScript("a");
+        write("v2", "");
+        loader.reloadScript(Collections.singletonList(file));
+        MoonLakeScript current = loader.getScript("a");
+        assertEquals("v2", current.getStore().get("version"));
+        PlayerMoveEvent.getHandlerList().fire(new PlayerMoveEvent());
+        assertEquals(Arrays.asList("v2"), CALLS);
+        assertEquals(true, previous != current);
+        // 旧的脚本卸载后存储由新的脚本继续使用
+        current.getStore().put("version", "v3");
+        assertEquals("v3", current.getStore().get("version"));
+    }
+
+    @Test
+    public void deletedDirectoryUnloadsDeferredStub() throws Exception {
+        // 延迟激活的存根不在编译缓存中, 删除目录后也必须卸载其触发器
+        File directory = new File(folder, "sub");
+        directory.mkdirs();
+        File lazy = new File(directory, "lazy.js");
+        Files.write(lazy.toPath(), ("// @events PlayerMoveEvent\nJava.type('" + getClass().getName() + "').call('lazy');\n").getBytes(StandardCharsets.UTF_8));
+        int handlers = PlayerMoveEvent.getHandlerList().size();
+        loader.reloadScript(Collections.singletonList(directory));
+        assertTrue(PlayerMoveEvent.getHandlerList().size() > handlers);
+        Files.delete(lazy.toPath());
+        Files.delete(directory.toPath());
+        loader.reloadScript(Collections.singletonList(directory));
+        assertEquals(handlers, PlayerMoveEvent.getHandlerList().size());
+        PlayerMoveEvent.getHandlerList().fire(new PlayerMoveEvent());
+        assertEquals(Collections.singletonList("v1"), CALLS);
+    }
+
+    @Test
+    public void overflowReconcilesDeletedFiles() throws Exception {
+        // 目录监视事件溢出时重新加载整个脚本目录, 磁盘上已经不存在的脚本需要卸载
+        File other = new File(folder, "b.js");
+        Files.write(other.toPath(), "var b = 1;\n".getBytes(StandardCharsets.UTF_8));
+        loader.reloadScript(Collections.singletonList(other));
+        assertNotNull(loader.getScript("b"));
+        MoonLakeScript previous = loader.getScript("a");
+        Files.delete(other.toPath());
+        loader.reloadScript(Collections.singletonList(folder));
+        assertNull(loader.getScript("b"));
+        assertSame(previous, loader.getScript("a"));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.api;
+
+import com.minecraft.moonlake.script.benchmark.BenchmarkPlugin;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+// 共享引擎模式下多个脚本注册同名处理函数时, 每个脚本的监听器都必须独立注册以及卸载
+public class SharedEngineListenerTest {
+
+    private final static List<String> CALLS = Collections.synchronizedList(new ArrayList<>());
+
+    private MoonLakeScriptLoader loader;
+
+    public static void call(String name) {
+        CALLS.add(name);
+    }
+
+    @Before
+    public void setup() throws Exception {
+        BenchmarkPlugin plugin = new BenchmarkPlugin();
+        plugin.getConfig().set("engine.mode", "shared");
+        File folder = new File(plugin.getDataFolder(), "scripts");
+        folder.mkdirs();
+        String source = "function onMove(event) { Java.type('" + getClass().getName() + "').call(plugin.getName()); }\n" +
+                "plugin.registerListener('onMove', org.bukkit.event.EventPriority.NORMAL, false, Java.type('org.bukkit.event.player.PlayerMoveEvent').class);\n";
+        Files.write(new File(folder, "a.js").toPath(), source.getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(folder, "b.js").toPath(), source.getBytes(StandardCharsets.UTF_8));
+        CALLS.clear();
+        loader = new MoonLakeScriptLoader(plugin);
+        loader.loadScript();
+    }
+
+    @After
+    public void tearDown() {
+        loader.unloadAll();
+    }
+
+    @Test
+    public void sameFunctionNameInTwoScripts() throws Exception {
+        PlayerMoveEvent.getHandlerList().fire(new PlayerMoveEvent());
+        Collections.sort(CALLS);
+        assertEquals(Arrays.asList("a", "b"), CALLS);
+    }
+
+    @Test
+    public void unloadOneScriptKeepsOther() throws Exception {
+        loader.unloadScript("a");
+        PlayerMoveEvent.getHandlerList().fire(new PlayerMoveEvent());
+        assertEquals(Collections.singletonList("b"), CALLS);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.api;
+
+import com.minecraft.moonlake.script.benchmark.BenchmarkPlugin;
+import com.minecraft.moonlake.script.listener.EventMapping;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertNotNull;
+
+// tick 期间处理器加载其他脚本不会导致遍历已加载脚本时抛出 ConcurrentModificationException
+public class TickLoadScriptTest {
+
+    private static MoonLakeScriptLoader current;
+    private static File other;
+
+    private BenchmarkPlugin plugin;
+    private MoonLakeScriptLoader loader;
+
+    public static void loadOther() {
+        current.loadScript(other);
+    }
+
+    @Before
+    public void setup() throws Exception {
+        if(!EventMapping.INSTANCE.initialized("PlayerMoveEvent"))
+            EventMapping.INSTANCE.initalize();
+        plugin = new BenchmarkPlugin();
+        File folder = new File(plugin.getDataFolder(), "scripts");
+        folder.mkdirs();
+        Files.write(new File(folder, "a.js").toPath(), ("plugin.registerListener({event: 'PlayerMoveEvent', mode: 'coalesce', handler: function(events) {\n" +
+                "    Java.type('" + getClass().getName() + "').loadOther();\n" +
+                "}});\n").getBytes(StandardCharsets.UTF_8));
+        // 其他脚本保证处理器执行之后遍历仍然继续
+        for(int i = 0; i < 8; i++)
+            Files.write(new File(folder, "c" + i + ".js").toPath(), "var c = 1;\n".getBytes(StandardCharsets.UTF_8));
+        loader = new MoonLakeScriptLoader(plugin);
+        loader.loadScript();
+        // 加载时不在脚本目录内, tick 时由处理器加载
+        other = new File(plugin.getDataFolder(), "b.js");
+        Files.write(other.toPath(), "var b = 1;\n".getBytes(StandardCharsets.UTF_8));
+        current = loader;
+    }
+
+    @After
+    public void tearDown() {
+        loader.unloadAll();
+        current = null;
+    }
+
+    @Test
+    public void handlerLoadsScriptDuringTick() throws Exception {
+        PlayerMoveEvent.getHandlerList().fire(new PlayerMoveEvent());
+        loader.tick();
+        assertNotNull(loader.getScript("b"));
+        loader.tick();
+    }
+}
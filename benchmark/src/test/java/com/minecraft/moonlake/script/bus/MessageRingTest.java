@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.bus;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// 多生产者单消费者环形缓冲区: 序号回绕以及并发发布
+public class MessageRingTest {
+
+    @Test
+    public void sequenceWrapsAcrossRounds() {
+        // 容量为 4 的缓冲区反复写满再读空, 每一轮序号都会加上容量
+        MessageRing ring = new MessageRing(3);
+        assertEquals(4, ring.getCapacity());
+        List<Object> received = new ArrayList<>();
+        int next = 0;
+        for(int round = 0; round < 100; round++) {
+            for(int i = 0; i < 4; i++)
+                assertTrue(ring.offer("topic", next++, null));
+            assertFalse(ring.offer("topic", -1, null));
+            assertEquals(4, ring.size());
+            // 部分读取后只有读取的槽位可以再次写入
+            assertEquals(1, ring.drain((topic, message, target) -> received.add(message), 1));
+            assertTrue(ring.offer("topic", next++, null));
+            assertFalse(ring.offer("topic", -1, null));
+            assertEquals(4, ring.drain((topic, message, target) -> received.add(message), Integer.MAX_VALUE));
+            assertTrue(ring.isEmpty());
+        }
+        assertEquals(next, received.size());
+        for(int i = 0; i < next; i++)
+            assertEquals(i, received.get(i));
+    }
+
+    @Test
+    public void producersKeepOrderPerThread() throws Exception {
+        // 多个生产者并发发布到小容量的缓冲区, 消费线程收到全部消息并且每个生产者的顺序不变
+        final int producers = 4;
+        final int count = 5000;
+        MessageRing ring = new MessageRing(8);
+        List<Thread> threadList = new ArrayList<>();
+        for(int p = 0; p < producers; p++) {
+            final int id = p;
+            Thread thread = new Thread(() -> {
+                for(int i = 0; i < count; i++) {
+                    long message = ((long) id << 32) | i;
+                    // 已满则短暂等待, 单核机器上忙等会使消费线程无法执行
+                    while(!ring.offer("topic", message, null))
+                        LockSupport.parkNanos(100000L);
+                }
+            });
+            // 断言失败时生产者可能一直等待, 不能阻止测试进程退出
+            thread.setDaemon(true);
+            threadList.add(thread);
+            thread.start();
+        }
+        int[] last = new int[producers];
+        Arrays.fill(last, -1);
+        int received = 0;
+        long deadline = System.currentTimeMillis() + 30000L;
+        while(received < producers * count && System.currentTimeMillis() < deadline) {
+            int drained = ring.drain((topic, message, target) -> {
+                long value = (Long) message;
+                int id = (int) (value >>> 32);
+                int sequence = (int) value;
+                assertEquals(last[id] + 1, sequence);
+                last[id] = sequence;
+            }, 64);
+            if(drained == 0)
+                Thread.yield();
+            received += drained;
+        }
+        for(Thread thread : threadList)
+            thread.join(5000L);
+        assertEquals(producers * count, received);
+        assertTrue(ring.isEmpty());
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.execute;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+// 执行时间预算: 只有主线程的耗时计入预算, 限流使脚本回到预算内, 挂起的脚本可以恢复, 看门狗按线程记录执行
+public class ScriptBudgetTest {
+
+    private final static Logger LOGGER = Logger.getLogger("ScriptBudgetTest");
+
+    private static void spend(ScriptBudget budget, long millis) {
+        // 模拟一次执行了指定毫秒的处理器
+        long start = budget.enter(null);
+        budget.exit(start - millis * 1000000L);
+    }
+
+    @Test
+    public void asyncTimeNotCharged() throws Exception {
+        ScriptBudget budget = new ScriptBudget("test", LOGGER, 10L, 1, 1);
+        Thread thread = new Thread(() -> spend(budget, 50L));
+        thread.start();
+        thread.join();
+        assertFalse(budget.isExhausted());
+        budget.tick();
+        assertFalse(budget.isThrottled());
+        // 异步执行仍然表示脚本不是空闲的
+        assertEquals(0L, budget.getIdleTicks());
+        spend(budget, 50L);
+        assertTrue(budget.isExhausted());
+        budget.tick();
+        assertTrue(budget.isThrottled());
+    }
+
+    @Test
+    public void throttleKeepsScriptUnderBudget() {
+        // 限流时只允许预计不会超出预算的执行, 回到预算内则解除限流而不是最终被挂起
+        ScriptBudget budget = new ScriptBudget("test", LOGGER, 10L, 1, 2);
+        spend(budget, 20L);
+        budget.tick();
+        assertTrue(budget.isThrottled());
+        int count = 0;
+        while(count < 100 && budget.acquire()) {
+            spend(budget, 3L);
+            count++;
+        }
+        assertEquals(3L, count);
+        assertFalse(budget.isExhausted());
+        budget.tick();
+        assertFalse(budget.isThrottled());
+        assertFalse(budget.isSuspended());
+    }
+
+    @Test
+    public void resumeSuspendedScript() {
+        ScriptBudget budget = new ScriptBudget("test", LOGGER, 10L, 1, 1);
+        for(int tick = 0; tick < 2; tick++) {
+            spend(budget, 20L);
+            budget.tick();
+        }
+        assertTrue(budget.isSuspended());
+        assertFalse(budget.acquire());
+        budget.resume();
+        assertFalse(budget.isSuspended());
+        assertTrue(budget.acquire());
+    }
+
+    @Test
+    public void watchdogKeepsOuterExecutionPerThread() throws Exception {
+        // 嵌套执行不会覆盖外层的记录, 其他线程的执行拥有独立的记录
+        ScriptBudget budget = new ScriptBudget("test", LOGGER, 10L, 1, 1);
+        ScriptTask outer = new ScriptTask(1L, () -> { }, budget, null, null, false, 0L, 0L);
+        ScriptTask inner = new ScriptTask(2L, () -> { }, budget, null, null, false, 0L, 0L);
+        long start = budget.enter(outer);
+        budget.exit(budget.enter(inner));
+        assertEquals(1L, budget.getRunning().size());
+        assertSame(outer, budget.getRunning().iterator().next().getValue().executor);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            long asyncStart = budget.enter(inner);
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            budget.exit(asyncStart);
+        });
+        thread.start();
+        entered.await();
+        assertEquals(2L, budget.getRunning().size());
+        release.countDown();
+        thread.join();
+        assertEquals(1L, budget.getRunning().size());
+        budget.exit(start);
+        assertTrue(budget.getRunning().isEmpty());
+    }
+}
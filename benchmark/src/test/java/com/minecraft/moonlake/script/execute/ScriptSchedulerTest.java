@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.execute;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+// 时间轮调度器: 高层槽的重新分布以及邮箱模式的异步任务
+public class ScriptSchedulerTest {
+
+    private final static Logger LOGGER = Logger.getLogger("ScriptSchedulerTest");
+
+    private ScriptScheduler scheduler;
+
+    @Before
+    public void setup() {
+        scheduler = new ScriptScheduler(LOGGER);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void cascadeRunsAtDeadline() {
+        // 跨越每一层边界的延迟: 高层槽的任务在低层转完一圈时重新分布, 仍然在到期的 tick 执行
+        long[] delays = { 1L, 63L, 64L, 65L, 127L, 128L, 4095L, 4096L, 4097L, 262143L, 262144L, 262145L };
+        long[] executed = new long[delays.length];
+        long[] now = new long[1];
+        for(int i = 0; i < delays.length; i++) {
+            final int index = i;
+            scheduler.schedule(() -> executed[index] = now[0], null, null, null, false, delays[i], 0L);
+        }
+        while(now[0] < 262145L) {
+            now[0]++;
+            scheduler.tick();
+        }
+        assertEquals(Arrays.toString(delays), Arrays.toString(executed));
+    }
+
+    @Test
+    public void cascadeKeepsPeriodAndOrder() {
+        // 重复任务的周期跨越第一层, 同一 tick 到期的任务按调度顺序执行
+        List<String> calls = new ArrayList<>();
+        long[] now = new long[1];
+        scheduler.schedule(() -> calls.add("a" + now[0]), null, null, null, false, 100L, 100L);
+        scheduler.schedule(() -> calls.add("b" + now[0]), null, null, null, false, 100L, 0L);
+        // 已取消的任务在重新分布时被丢弃
+        scheduler.schedule(() -> calls.add("c" + now[0]), null, null, null, false, 100L, 0L).cancel();
+        while(now[0] < 300L) {
+            now[0]++;
+            scheduler.tick();
+        }
+        assertEquals(Arrays.asList("a100", "b100", "a200", "a300"), calls);
+    }
+
+    @Test
+    public void asyncTaskWithMailboxRunsInDrain() {
+        // 邮箱模式的异步任务投递到邮箱, 由处理邮箱的线程执行, 线程池不会持有邮箱锁
+        ScriptMailbox mailbox = new ScriptMailbox("test", LOGGER, 16, 16);
+        List<Thread> threadList = Collections.synchronizedList(new ArrayList<>());
+        scheduler.schedule(() -> threadList.add(Thread.currentThread()), null, mailbox, null, true, 1L, 1L);
+        scheduler.tick();
+        assertEquals(1L, mailbox.size());
+        // 上一次执行尚未结束则跳过本周期, 邮箱内不会堆积同一个任务
+        scheduler.tick();
+        assertEquals(1L, mailbox.size());
+        assertTrue(threadList.isEmpty());
+        mailbox.drain(null);
+        assertEquals(Collections.singletonList(Thread.currentThread()), threadList);
+        scheduler.tick();
+        assertEquals(1L, mailbox.size());
+        mailbox.drain(null);
+        assertEquals(2L, threadList.size());
+        assertSame(Thread.currentThread(), threadList.get(1));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.listener;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// 合并模式: 按键只保留最新的事件, 超出最大数量时淘汰最早的事件或键
+public class EventCoalescerTest {
+
+    public static class RegionEvent extends Event {
+
+        private final static HandlerList handlers = new HandlerList();
+        private final String region;
+
+        public RegionEvent(String region) {
+            this.region = region;
+        }
+
+        public String getRegion() {
+            return region;
+        }
+
+        @Override
+        public HandlerList getHandlers() {
+            return handlers;
+        }
+
+        public static HandlerList getHandlerList() {
+            return handlers;
+        }
+    }
+
+    @Test
+    public void keyKeepsLatestEvent() {
+        EventCoalescer coalescer = new EventCoalescer(RegionEvent.class, "region", 2, 16);
+        RegionEvent first = new RegionEvent("a");
+        RegionEvent second = new RegionEvent("b");
+        RegionEvent third = new RegionEvent("a");
+        RegionEvent none = new RegionEvent(null);
+        coalescer.offer(first);
+        coalescer.offer(second);
+        coalescer.offer(third);
+        coalescer.offer(none);
+        // 未到达间隔不会交付
+        assertNull(coalescer.poll());
+        Event[] batch = coalescer.poll();
+        // 同一个键替换为最新的事件, 保持键第一次出现的顺序, 键为 null 的事件共用一个键
+        assertTrue(batch instanceof RegionEvent[]);
+        assertArrayEquals(new Event[] { third, second, none }, batch);
+        // 交付后缓冲被清空
+        assertNull(coalescer.poll());
+        assertNull(coalescer.poll());
+    }
+
+    @Test
+    public void keyEvictsOldestKeyOverMax() {
+        EventCoalescer coalescer = new EventCoalescer(RegionEvent.class, "region", 1, 2);
+        RegionEvent a = new RegionEvent("a");
+        RegionEvent b = new RegionEvent("b");
+        RegionEvent b2 = new RegionEvent("b");
+        RegionEvent c = new RegionEvent("c");
+        coalescer.offer(a);
+        coalescer.offer(b);
+        // 已存在的键替换事件, 不会淘汰其他键
+        coalescer.offer(b2);
+        assertArrayEquals(new Event[] { a, b2 }, coalescer.poll());
+        coalescer.offer(a);
+        coalescer.offer(b);
+        coalescer.offer(c);
+        assertArrayEquals(new Event[] { b, c }, coalescer.poll());
+    }
+
+    @Test
+    public void queueKeepsLatestMax() {
+        EventCoalescer coalescer = new EventCoalescer(RegionEvent.class, null, 1, 3);
+        RegionEvent[] events = new RegionEvent[5];
+        for(int i = 0; i < events.length; i++) {
+            events[i] = new RegionEvent("r" + i);
+            coalescer.offer(events[i]);
+        }
+        assertArrayEquals(new Event[] { events[2], events[3], events[4] }, coalescer.poll());
+        coalescer.offer(events[0]);
+        coalescer.clear();
+        assertNull(coalescer.poll());
+    }
+
+    @Test
+    public void unknownKeyRejected() {
+        boolean failed = false;
+        try {
+            new EventCoalescer(RegionEvent.class, "missing", 1, 1);
+        } catch (RuntimeException e) {
+            failed = true;
+        }
+        assertTrue(failed);
+    }
+}
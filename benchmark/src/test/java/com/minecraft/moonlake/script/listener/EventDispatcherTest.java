@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.listener;
+
+import com.minecraft.moonlake.script.benchmark.BenchmarkPlugin;
+import com.minecraft.moonlake.script.execute.Executor;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// 事件分发器: 向 Bukkit 注册失败时不会留下未注册的通道
+public class EventDispatcherTest {
+
+    public static class FailingEvent extends Event {
+
+        private final static HandlerList handlers = new HandlerList();
+        private static volatile boolean fail;
+
+        @Override
+        public HandlerList getHandlers() {
+            return handlers;
+        }
+
+        public static HandlerList getHandlerList() {
+            if(fail)
+                throw new IllegalStateException("The handler list not available.");
+            return handlers;
+        }
+    }
+
+    private final static class CountExecutor implements Executor<CountExecutor> {
+
+        private int count;
+
+        @Override
+        public Object execute(Object... argument) {
+            count++;
+            return null;
+        }
+
+        @Override
+        public int compareTo(CountExecutor o) {
+            return Integer.compare(System.identityHashCode(this), System.identityHashCode(o));
+        }
+    }
+
+    @Test
+    public void failedRegistrationLeavesNoDeadChannel() throws Exception {
+        EventDispatcher dispatcher = new EventDispatcher(new BenchmarkPlugin());
+        CountExecutor executor = new CountExecutor();
+        EventListener<CountExecutor> listener = new EventListener<>(executor, FailingEvent.class);
+        // 事件映射先解析并缓存处理器列表, 之后向 Bukkit 注册时才失败
+        EventMapping.getHandler(FailingEvent.class);
+        FailingEvent.fail = true;
+        boolean failed = false;
+        try {
+            dispatcher.register(listener, EventPriority.NORMAL, false);
+        } catch (RuntimeException e) {
+            failed = true;
+        } finally {
+            FailingEvent.fail = false;
+        }
+        assertTrue(failed);
+        assertEquals(0L, FailingEvent.getHandlerList().size());
+        // 再次注册会创建新的通道并注册到 Bukkit, 而不是复用未注册的通道
+        dispatcher.register(listener, EventPriority.NORMAL, false);
+        assertEquals(1L, FailingEvent.getHandlerList().size());
+        FailingEvent.getHandlerList().fire(new FailingEvent());
+        assertEquals(1L, executor.count);
+        dispatcher.unregister(listener);
+        assertEquals(0L, FailingEvent.getHandlerList().size());
+    }
+}
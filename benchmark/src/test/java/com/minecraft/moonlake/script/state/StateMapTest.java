@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.state;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// 状态表: 后移删除以及过期条目的清理
+public class StateMapTest {
+
+    @Test
+    public void backwardShiftDeleteKeepsProbeChains() {
+        // 随机写入以及删除, 每一步都与 HashMap 对比, 删除后探测链上的条目必须仍然可以找到
+        StateMap stateMap = new StateMap("test", StateMap.Type.ENTITY, 0L, 0);
+        Map<Integer, Object> expected = new HashMap<>();
+        Random random = new Random(42L);
+        for(int i = 0; i < 20000; i++) {
+            int key = random.nextInt(512);
+            if(random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), stateMap.remove(key));
+            } else {
+                Object value = "v" + i;
+                assertEquals(expected.put(key, value), stateMap.put(key, value));
+            }
+            assertEquals(expected.size(), stateMap.size());
+        }
+        for(int key = 0; key < 512; key++)
+            assertEquals(expected.get(key), stateMap.get(key));
+        // 全部删除后表为空
+        for(int key = 0; key < 512; key++)
+            stateMap.remove(key);
+        assertEquals(0, stateMap.size());
+        for(int key = 0; key < 512; key++)
+            assertNull(stateMap.get(key));
+    }
+
+    @Test
+    public void sweepRemovesOnlyExpired() throws Exception {
+        StateMap stateMap = new StateMap("test", StateMap.Type.ENTITY, 50L, 0);
+        for(int key = 0; key < 300; key++)
+            stateMap.put(key, "old");
+        Thread.sleep(80L);
+        // 新的条目与过期的条目交错在同一批探测链上
+        for(int key = 1000; key < 1100; key++)
+            stateMap.put(key, "new");
+        assertEquals(300, stateMap.sweep());
+        assertEquals(100, stateMap.size());
+        for(int key = 1000; key < 1100; key++)
+            assertEquals("new", stateMap.get(key));
+        for(int key = 0; key < 300; key++)
+            assertTrue(!stateMap.contains(key));
+        assertEquals(0, stateMap.sweep());
+    }
+
+    @Test
+    public void maxEvictsWhenFull() {
+        StateMap stateMap = new StateMap("test", StateMap.Type.ENTITY, 0L, 10);
+        for(int key = 0; key < 50; key++) {
+            stateMap.put(key, key);
+            assertEquals(key, stateMap.get(key));
+        }
+        assertEquals(10, stateMap.size());
+    }
+}
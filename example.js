@@ -17,6 +17,11 @@
 
 // 脚本插件唯一的插件对象 plugin
 
+// 脚本开头注释中的指令: // @名称 值
+// @engine: 此脚本使用的引擎, 例如 // @engine graaljs, 不指定则使用配置文件的 engine.provider
+// @events: 延迟激活, 例如 // @events PlayerJoinEvent, PlayerQuitEvent, 启动时不加载脚本, 第一次触发声明的事件时才加载
+// @idle: 延迟激活的脚本空闲多少秒后卸载, 不指定则使用配置文件的 lazy.idle
+
 // 注册事件监听器: registerListener
 // 返回值: boolean 是否注册成功
 // 参数:
@@ -25,6 +30,14 @@
 // priority: 事件的优先度 // TODO
 // ignoreCancelled: 是否忽略已被阻止 // TODO
 // handler: 处理函数 // TODO
+// filter: 可选的过滤器, 在 Java 侧判断, 不通过的事件不会调用处理函数
+//            worlds: 世界名称, permission: 玩家权限, entities: 实体类型
+//            materials: 方块或物品类型, properties: 事件属性的简单相等
+// mode: 可选的 "coalesce" 合并模式, 事件在 Java 侧缓冲, 在 tick 边界以数组交给处理函数
+//            key: 合并的键 (player, entity, block, world 或者事件属性), 每个键只保留最新的事件
+//            interval: 交付间隔 tick, 默认 1, max: 每批最多的事件数量, 默认 64
+// subtypes: 是否同时接收所有子类的事件, 默认 false
+//            抽象事件 (例如 PlayerEvent, EntityEvent, BlockEvent) 总是接收所有子类的事件
 //
 plugin.registerListener({
     event: "AsyncPlayerChatEvent", // 监听异步玩家聊天事件
@@ -36,6 +49,91 @@ plugin.registerListener({
     }
 });
 
+plugin.registerListener({
+    event: "PlayerInteractEvent", // 监听玩家交互事件
+    filter: {
+        worlds: ["world"], // 只处理主世界
+        permission: "moonlake.script.interact", // 玩家需要拥有的权限
+        materials: ["CHEST"], // 只处理箱子
+        properties: { action: "RIGHT_CLICK_BLOCK" } // 只处理右键方块
+    },
+    handler: function (event) {
+        event.getPlayer().sendMessage("你打开了一个箱子.");
+    }
+});
+
+plugin.registerListener({
+    event: "PlayerMoveEvent", // 监听玩家移动事件
+    mode: "coalesce", // 合并模式: 每 tick 只调用一次处理函数
+    key: "player", // 每个玩家只保留最新的移动事件
+    handler: function (events) {
+        for (var i = 0; i < events.length; i++) {
+            var player = events[i].getPlayer();
+            // 处理玩家本 tick 最新的位置
+        }
+    }
+});
+
+plugin.registerListener({
+    event: "PlayerEvent", // 订阅所有的玩家事件, 只占用每个处理器列表的一个通道
+    filter: {
+        permission: "moonlake.script.audit"
+    },
+    handler: function (event) {
+        plugin.getLogger().info(event.getPlayer().getName() + ": " + event.getEventName());
+    }
+});
+
+// 脚本任务: runLater, runTimer, runLaterAsync, runTimerAsync
+// 返回值: 任务对象, 可以调用 cancel 取消
+// 参数:
+// 处理函数, 延迟 tick, 周期 tick (仅 runTimer)
+// 所有脚本的任务共用同一个时间轮, 脚本卸载时未执行的任务会自动取消
+var count = 0;
+var task = plugin.runTimer(function () {
+    if (++count >= 10)
+        task.cancel(); // 执行 10 次后取消
+}, 20, 20);
+
+// 脚本文件: plugin.files.readText, writeText, append
+// 根目录为插件目录下的 data/脚本名, 文件操作不会阻塞主线程
+// 回调函数 function (result, error) 在主线程执行
+plugin.files.append("chat.log", "server started\n");
+plugin.files.readText("config.json", function (text, error) {
+    if (error != null || text == null)
+        return;
+    var config = JSON.parse(text);
+});
+
+// 脚本键值存储: plugin.store.get, getOrDefault, put, remove, contains, keys, size
+// 读写都在内存中立即完成, 修改在后台批量写入脚本数据目录下的 store.log, 崩溃后重新加载时恢复
+// 值为字符串, 对象可以使用 JSON.stringify 保存
+var joins = parseInt(plugin.store.getOrDefault("joins", "0"));
+plugin.store.put("joins", String(joins + 1));
+
+// 脚本状态表: plugin.state.players(名称[, 属性]), plugin.state.entities(名称[, 属性])
+// 以玩家 (UUID) 或者实体 (实体 id) 为键, 玩家退出, 实体死亡, 区块或世界卸载时自动移除
+// 属性: ttl -> 最后一次写入后的存活时间 (毫秒), max -> 最大条目数量
+// 方法: get, getOrDefault, put, remove, contains, size, clear
+var combo = plugin.state.players("combo", { ttl: 5000 });
+plugin.registerListener({
+    event: "EntityDamageByEntityEvent",
+    handler: function (event) {
+        var damager = event.getDamager();
+        if (damager instanceof org.bukkit.entity.Player)
+            combo.put(damager, combo.getOrDefault(damager, 0) + 1);
+    }
+});
+
+// 脚本消息总线: plugin.bus.publish(主题[, 消息]), subscribe(主题模式, 处理函数[, async]), unsubscribe(订阅或主题模式)
+// 主题以 . 分隔, 订阅的模式中 * 匹配一段, # 作为最后一段匹配零或多段, 脚本卸载时自动取消所有订阅
+// 消息发布时复制为只读的 Java Map / List, 不能包含函数, 其他引擎的脚本同样可以读取: message.get("arena")
+// 处理函数 function (message, topic) 默认在主线程下一个 tick 执行, async 为 true 时在总线的消费线程执行
+plugin.bus.subscribe("arena.*.start", function (message, topic) {
+    plugin.getLogger().info(topic + ": " + message.get("players").size() + " players");
+});
+plugin.bus.publish("arena.main.start", { players: ["Steve", "Alex"] });
+
 // 脚本插件的卸载构造函数: setUnloadHook
 // 返回值: N/A
 // 参数:
@@ -19,16 +19,43 @@
 package com.minecraft.moonlake.script;
 
 import com.minecraft.moonlake.MoonLakePlugin;
+import com.minecraft.moonlake.script.api.MoonLakeScript;
+import com.minecraft.moonlake.script.api.MoonLakeScriptFiles;
 import com.minecraft.moonlake.script.api.MoonLakeScriptLoader;
+import com.minecraft.moonlake.script.api.MoonLakeScriptWatcher;
+import com.minecraft.moonlake.script.bus.MessageBus;
+import com.minecraft.moonlake.script.engine.ScriptEngineRegistry;
+import com.minecraft.moonlake.script.execute.ScriptScheduler;
+import com.minecraft.moonlake.script.execute.ScriptWatchdog;
+import com.minecraft.moonlake.script.listener.EventDispatcher;
 import com.minecraft.moonlake.script.listener.EventMapping;
+import com.minecraft.moonlake.script.metrics.ListenerMetrics;
+import com.minecraft.moonlake.script.metrics.ScriptLeakDetector;
+import com.minecraft.moonlake.script.metrics.ScriptMetrics;
+import com.minecraft.moonlake.script.state.StateEvictor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 public class ScriptPlugin extends JavaPlugin {
 
     private MoonLakeScriptLoader scriptLoader;
+    private EventDispatcher eventDispatcher;
+    private ScriptWatchdog watchdog;
+    private ScriptScheduler scheduler;
+    private ExecutorService filePool;
+    private StateEvictor stateEvictor;
+    private MessageBus messageBus;
+    private ScriptMetrics metrics;
+    private ScriptLeakDetector leakDetector;
+    private MoonLakeScriptWatcher scriptWatcher;
 
     public ScriptPlugin() {
     }
@@ -43,29 +70,203 @@ public class ScriptPlugin extends JavaPlugin {
         // 初始化插件目录
         this.initFolder();
         // 初始化事件映射器
-        EventMapping.INSTANCE.initalize();
+        EventMapping.INSTANCE.initalize(new File(getDataFolder(), "cache"));
+        // 初始化事件分发器
+        this.eventDispatcher = new EventDispatcher(this);
+        // 初始化脚本看门狗
+        this.watchdog = new ScriptWatchdog(getLogger(), getConfig().getLong("budget.watchdog", 5000L));
+        this.watchdog.start();
+        // 初始化脚本任务调度器
+        this.scheduler = new ScriptScheduler(getLogger());
+        // 初始化脚本文件 API 的 I/O 线程池
+        this.filePool = MoonLakeScriptFiles.newPool(getConfig().getInt("files.threads", 2));
+        // 初始化脚本状态表的淘汰器, 每秒移除过期的条目
+        this.stateEvictor = new StateEvictor();
+        this.stateEvictor.registerEvents(this);
+        this.scheduler.schedule(stateEvictor::sweep, null, null, null, false, 20L, 20L);
+        // 初始化脚本之间的消息总线
+        this.messageBus = new MessageBus(getLogger(), getConfig().getInt("bus.capacity", 4096), getConfig().getInt("bus.batch", 1024));
+        // 初始化监听器指标
+        this.initMetrics();
+        // 初始化已卸载脚本的泄漏检测
+        this.leakDetector = new ScriptLeakDetector(this, getConfig().getLong("memory.leak-check", 60L));
         // 初始化脚本加载器以及进行加载
         this.scriptLoader = new MoonLakeScriptLoader(this);
         this.scriptLoader.loadScript();
+        // 每 tick 在主线程推进任务时间轮, 处理脚本邮箱以及执行时间预算
+        // 所有脚本的任务共用这一个 Bukkit 任务
+        this.getServer().getScheduler().runTaskTimer(this, this::tick, 1L, 1L);
+        // 监视脚本目录, 脚本文件变化后增量重新加载
+        this.initWatcher();
 
         this.getLogger().info("月色之湖脚本 MoonLakeScript 插件 v" + getDescription().getVersion() + " 成功加载.");
     }
 
     @Override
     public void onDisable() {
+        // 关闭脚本目录监视
+        if(scriptWatcher != null)
+            scriptWatcher.shutdown();
+        // 关闭泄漏检测, 插件关闭时卸载的脚本不需要追踪
+        getLeakDetector().shutdown();
         // 卸载所有脚本
         getScriptLoader().unloadAll();
+        // 关闭消息总线, 停止异步消费线程
+        getMessageBus().shutdown();
+        // 释放脚本引擎占用的资源
+        ScriptEngineRegistry.INSTANCE.close();
+        // 关闭任务调度器
+        getScheduler().shutdown();
+        // 等待已提交的文件写入完成
+        getFilePool().shutdown();
+        try {
+            getFilePool().awaitTermination(5L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 卸载事件分发器的所有通道
+        getEventDispatcher().unregisterAll();
+        // 关闭看门狗
+        getWatchdog().shutdown();
+        // 卸载监听器指标 MBean
+        if(getMetrics() != null)
+            getMetrics().unregisterMBean();
+    }
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if(args.length >= 1 && args[0].equalsIgnoreCase("metrics")) {
+            // 查看监听器指标: /mls metrics [script|reset]
+            if(getMetrics() == null) {
+                sender.sendMessage("The listener metrics not enabled.");
+                return true;
+            }
+            if(args.length >= 2 && args[1].equalsIgnoreCase("reset")) {
+                getMetrics().reset();
+                sender.sendMessage("The listener metrics reset.");
+                return true;
+            }
+            List<ListenerMetrics> metricsList = getMetrics().getMetrics(args.length >= 2 ? args[1] : null);
+            sender.sendMessage(ScriptMetrics.HEADER);
+            metricsList.stream().limit(10).forEach((metrics) -> sender.sendMessage(metrics.toString()));
+            return true;
+        }
+        if(args.length >= 1 && args[0].equalsIgnoreCase("memory")) {
+            // 估算脚本保留的堆内存: /mls memory [script]
+            getLeakDetector().estimate(args.length >= 2 ? args[1] : null, (lines) -> lines.forEach(sender::sendMessage));
+            return true;
+        }
+        if(args.length >= 2 && args[0].equalsIgnoreCase("resume")) {
+            // 恢复超出预算被挂起的脚本: /mls resume <script>
+            MoonLakeScript script = scriptLoader.getScript(args[1]);
+            if(script == null) {
+                sender.sendMessage("The script '" + args[1] + "' not loaded.");
+                return true;
+            }
+            if(!script.getBudget().isSuspended()) {
+                sender.sendMessage("The script '" + args[1] + "' not suspended.");
+                return true;
+            }
+            script.getBudget().resume();
+            sender.sendMessage("The script '" + args[1] + "' resumed.");
+            return true;
+        }
+        if(args.length >= 1 && args[0].equalsIgnoreCase("leaks")) {
+            // 执行 GC 并检查已卸载的脚本是否仍然可达: /mls leaks
+            sender.sendMessage("The leak check of " + getLeakDetector().getTrackedCount() + " unloaded scripts started.");
+            getLeakDetector().check((lines) -> lines.forEach(sender::sendMessage));
+            return true;
+        }
+        return false;
+    }
+
+    private void tick() {
+        // 任务先于预算结算执行, 计入本 tick 的脚本执行时间
+        scheduler.tick();
+        // 交付主线程订阅的消息, 同样计入本 tick 的脚本执行时间
+        messageBus.drain();
+        scriptLoader.tick();
+    }
+
+    private void initWatcher() {
+        // 初始化脚本目录监视
+        if(!getConfig().getBoolean("watcher.enabled", true))
+            return;
+        this.scriptWatcher = new MoonLakeScriptWatcher(scriptLoader, getConfig().getLong("watcher.debounce", 500L));
+        try {
+            this.scriptWatcher.start();
+        } catch (Exception e) {
+            this.scriptWatcher = null;
+            this.getLogger().log(Level.WARNING, "The start script watcher exception", e);
+        }
+    }
+
+    private void initMetrics() {
+        // 初始化监听器指标: MBean 以及定时导出文件
+        if(!getConfig().getBoolean("metrics.enabled", true))
+            return;
+        this.metrics = new ScriptMetrics();
+        try {
+            this.metrics.registerMBean();
+        } catch (Exception e) {
+            this.getLogger().log(Level.WARNING, "The register metrics mbean exception", e);
+        }
+        long interval = getConfig().getLong("metrics.dump", 60L) * 20L;
+        if(interval > 0L) {
+            File file = new File(getDataFolder(), "metrics.txt");
+            this.getServer().getScheduler().runTaskTimerAsynchronously(this, () -> {
+                try {
+                    metrics.dump(file);
+                } catch (Exception e) {
+                    getLogger().log(Level.WARNING, "The dump metrics file exception", e);
+                }
+            }, interval, interval);
+        }
     }
 
     private void initFolder() {
         if(!getDataFolder().exists())
             getDataFolder().mkdirs();
+        // 保存默认的配置文件
+        saveDefaultConfig();
     }
 
     public MoonLakeScriptLoader getScriptLoader() {
         return scriptLoader;
     }
 
+    public EventDispatcher getEventDispatcher() {
+        return eventDispatcher;
+    }
+
+    public ScriptWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    public ScriptScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public ExecutorService getFilePool() {
+        return filePool;
+    }
+
+    public StateEvictor getStateEvictor() {
+        return stateEvictor;
+    }
+
+    public MessageBus getMessageBus() {
+        return messageBus;
+    }
+
+    public ScriptMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ScriptLeakDetector getLeakDetector() {
+        return leakDetector;
+    }
+
     private boolean setupMoonLake() {
         Plugin plugin = this.getServer().getPluginManager().getPlugin("MoonLake");
         return plugin != null && plugin instanceof MoonLakePlugin;
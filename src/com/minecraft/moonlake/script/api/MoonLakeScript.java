@@ -18,41 +18,95 @@
 
 package com.minecraft.moonlake.script.api;
 
-import com.minecraft.moonlake.MoonLakeAPI;
 import com.minecraft.moonlake.script.ScriptPlugin;
+import com.minecraft.moonlake.script.engine.ScriptEngineProvider;
 import com.minecraft.moonlake.script.execute.ExecutorFunction;
 import com.minecraft.moonlake.script.execute.ExecutorMethod;
+import com.minecraft.moonlake.script.execute.ScriptBudget;
+import com.minecraft.moonlake.script.execute.ScriptMailbox;
+import com.minecraft.moonlake.script.execute.ScriptTask;
+import com.minecraft.moonlake.script.listener.EventCoalescer;
+import com.minecraft.moonlake.script.listener.EventFilter;
 import com.minecraft.moonlake.script.listener.EventListener;
 import com.minecraft.moonlake.script.listener.EventMapping;
+import com.minecraft.moonlake.script.metrics.ListenerMetrics;
+import com.minecraft.moonlake.script.metrics.ScriptMetrics;
 import com.minecraft.moonlake.validate.Validate;
 import org.bukkit.event.Event;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.HandlerList;
 
 import javax.script.Invocable;
+import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
+import javax.script.SimpleScriptContext;
+import java.io.File;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class MoonLakeScript {
 
     final ScriptPlugin parent;
+    final ScriptEngineProvider provider;
     final ScriptEngine engine;
+    final ScriptContext context;
+    final ScriptMailbox mailbox;
+    final ScriptBudget budget;
     final String name;
 
-    public MoonLakeScript(ScriptPlugin parent, String name, ScriptEngine engine) {
+    public MoonLakeScript(ScriptPlugin parent, String name, ScriptEngineProvider provider, ScriptEngine engine, ScriptContext context) {
         this.parent = parent;
+        this.provider = provider;
         this.engine = engine;
+        this.context = context;
         this.name = name;
+        // 邮箱模式则异步事件投递到脚本的邮箱串行执行
+        this.mailbox = "mailbox".equalsIgnoreCase(parent.getConfig().getString("execution.mode", "direct")) ? new ScriptMailbox(name, parent.getLogger(),
+                parent.getConfig().getInt("execution.mailbox.capacity", 8192),
+                parent.getConfig().getInt("execution.mailbox.batch", 1024)) : null;
+        // 每个脚本每 tick 的执行时间预算, 由看门狗监视卡住的处理器
+        this.budget = new ScriptBudget(name, parent.getLogger(),
+                parent.getConfig().getLong("budget.tick", 10L),
+                parent.getConfig().getInt("budget.throttle", 3),
+                parent.getConfig().getInt("budget.suspend", 10));
+        parent.getWatchdog().register(budget);
     }
 
     public String getName() {
         return name;
     }
 
+    public ScriptEngineProvider getProvider() {
+        return provider;
+    }
+
+    public ScriptEngine getEngine() {
+        return engine;
+    }
+
+    public ScriptContext getContext() {
+        return context;
+    }
+
+    public ScriptMailbox getMailbox() {
+        return mailbox;
+    }
+
+    public ScriptBudget getBudget() {
+        return budget;
+    }
+
     public Logger getLogger() {
         return parent.getLogger();
     }
@@ -75,16 +129,69 @@ public class MoonLakeScript {
                 getLogger().log(Level.SEVERE, "The run unload hook error exception", e);
             }
         }
-        // 卸载所有的事件监听器
-        functionSet.forEach(this::unregisterListener);
-        functionSet.clear();
-        methodSet.forEach(this::unregisterListener);
-        methodSet.clear();
+        // 批量卸载所有的事件监听器, 每个通道只会重建一次
+        parent.getEventDispatcher().unregisterAll(listenerMap.values());
+        listenerMap.clear();
+        handlerMap.clear();
+        // 丢弃合并模式尚未交付的事件
+        coalesceList.forEach(listener -> listener.getCoalescer().clear());
+        coalesceList.clear();
+        // 取消所有未执行的任务
+        taskSet.forEach(ScriptTask::cancel);
+        // 关闭文件 API, 已提交的写入仍然会完成
+        if(files != null)
+            files.close();
+        // 写入键值存储剩余的修改并关闭
+        if(store != null)
+            store.close();
+        // 释放状态表
+        if(state != null)
+            state.close();
+        // 取消所有消息总线的订阅
+        if(bus != null)
+            bus.close();
+        // 关闭邮箱
+        if(mailbox != null)
+            mailbox.close();
+        parent.getWatchdog().unregister(budget);
+        // 非共享模式下引擎的默认上下文为脚本的上下文, 替换为空的上下文, 编译缓存的引擎不会再引用已卸载的脚本
+        if(engine.getContext() == context)
+            engine.setContext(new SimpleScriptContext());
+        // 释放脚本上下文占用的引擎资源
+        provider.release(context);
+        // 追踪已卸载的脚本, GC 后仍然可达则报告引用路径
+        if(parent.getLeakDetector() != null)
+            parent.getLeakDetector().track(this);
     }
 
     /** 事件监听器处理区域 */
-    private final Set<EventListener<ExecutorFunction>> functionSet = new TreeSet<>();
-    private final Set<EventListener<ExecutorMethod>> methodSet = new TreeSet<>();
+    // 哈希索引: 以 (执行器, 事件类, 优先度, 忽略已阻止) 为键, 执行器包含脚本和处理器, 值为注册到分发器的监听器
+    private final Map<ListenerKey, EventListener<?>> listenerMap = new LinkedHashMap<>();
+    // 二级索引: 以 (执行器, 事件类) 为键, 值为此处理器在各个优先度注册的键, 卸载时不需要遍历 listenerMap
+    private final Map<EventListener<?>, List<ListenerKey>> handlerMap = new HashMap<>();
+    // 合并模式的监听器, 每 tick 由加载器调用 flush
+    private final List<EventListener<?>> coalesceList = new CopyOnWriteArrayList<>();
+
+    public int getListenerCount() {
+        // 获取已注册的事件监听器数量
+        return listenerMap.size();
+    }
+
+    Collection<EventListener<?>> getListeners() {
+        // 获取已注册的事件监听器, 由延迟激活的存根使用
+        return listenerMap.values();
+    }
+
+    public void flush() {
+        // 将所有合并模式监听器缓冲的事件批量交给处理器
+        for(EventListener<?> listener : coalesceList) {
+            try {
+                listener.flush();
+            } catch (Exception e) {
+                getLogger().log(Level.SEVERE, "Could not pass coalesced event " + listener.getEvent().getSimpleName() + " to " + listener, e);
+            }
+        }
+    }
 
     protected HandlerList getHandlerList(Class<? extends Event> event) {
         // 获取指定事件类的处理器列表对象
@@ -97,24 +204,71 @@ public class MoonLakeScript {
     }
 
     protected boolean unregisterListener(Class<? extends Event> event, EventListener<?> listener) {
-        // 将指定事件类从监听器卸载
-        HandlerList handlerList = getHandlerList(event);
-        if(handlerList == null)
-            // 为 null 则卸载失败
+        // 将指定事件类从监听器卸载: 从分发器移除, 分发器的通道为空时才会从处理器列表卸载
+        coalesceList.remove(listener);
+        return parent.getEventDispatcher().unregister(listener);
+    }
+
+    private boolean indexListener(EventListener<?> listener, EventPriority priority, boolean ignoreCancelled) {
+        // 添加到索引, 同一个处理器在同一个 (优先度, 忽略已阻止) 已经注册则返回 false
+        ListenerKey key = new ListenerKey(listener, priority, ignoreCancelled);
+        if(listenerMap.putIfAbsent(key, listener) != null)
             return false;
-        // 否则调用处理器列表进行卸载
-        handlerList.unregister(listener);
+        handlerMap.computeIfAbsent(listener, k -> new ArrayList<>(1)).add(key);
         return true;
     }
 
+    private boolean unregisterListeners(EventListener<?> listener) {
+        // 通过二级索引移除此处理器在所有优先度的注册, 移除成功则从分发器卸载
+        List<ListenerKey> keyList = handlerMap.remove(listener);
+        if(keyList == null)
+            return false;
+        List<EventListener<?>> removedList = new ArrayList<>(keyList.size());
+        for(ListenerKey key : keyList)
+            removedList.add(listenerMap.remove(key));
+        coalesceList.removeAll(removedList);
+        parent.getEventDispatcher().unregisterAll(removedList);
+        return true;
+    }
+
+    protected ListenerMetrics getMetrics(Class<? extends Event> event, String handler) {
+        // 获取监听器的指标对象, 未开启指标则为 null
+        ScriptMetrics metrics = parent.getMetrics();
+        return metrics != null ? metrics.get(name, event.getSimpleName(), handler) : null;
+    }
+
     public boolean registerListener(String name, EventPriority priority, boolean ignoreCancelled, Class<? extends Event> event) {
         // 注册事件监听器: Function
-        ExecutorFunction function = new ExecutorFunction((Invocable) engine, name);
-        EventListener<ExecutorFunction> functionListener = new EventListener<>(function, event);
+        return registerListener(name, priority, ignoreCancelled, false, event);
+    }
+
+    public boolean registerListener(String name, EventPriority priority, boolean ignoreCancelled, boolean sync, Class<? extends Event> event) {
+        // 注册事件监听器: Function, sync 为 true 则异步事件不经过邮箱直接执行
+        return registerListener(name, priority, ignoreCancelled, sync, null, event);
+    }
+
+    public boolean registerListener(String name, EventPriority priority, boolean ignoreCancelled, boolean sync, Predicate<Event> filter, Class<? extends Event> event) {
+        // 注册事件监听器: Function, filter 不通过的事件不会调用脚本
+        return registerListener(name, priority, ignoreCancelled, sync, filter, null, event);
+    }
+
+    public boolean registerListener(String name, EventPriority priority, boolean ignoreCancelled, boolean sync, Predicate<Event> filter, EventCoalescer coalescer, Class<? extends Event> event) {
+        // 注册事件监听器: Function, coalescer 不为 null 则事件合并后在 tick 边界以数组交给处理器
+        return registerListener(name, priority, ignoreCancelled, sync, filter, coalescer, Modifier.isAbstract(event.getModifiers()), event);
+    }
 
-        if(functionSet.add(functionListener)) {
-            // add 到集合成功则注册事件
-            MoonLakeAPI.registerEvent(event, functionListener, priority, functionListener, parent, ignoreCancelled);
+    public boolean registerListener(String name, EventPriority priority, boolean ignoreCancelled, boolean sync, Predicate<Event> filter, EventCoalescer coalescer, boolean subtypes, Class<? extends Event> event) {
+        // 注册事件监听器: Function, subtypes 为 true 则同时接收所有子类的事件, 抽象事件类必须为 true
+        ExecutorFunction function = new ExecutorFunction(provider, (Invocable) engine, context.getBindings(ScriptContext.ENGINE_SCOPE), name);
+        EventListener<ExecutorFunction> functionListener = new EventListener<>(function, event, mailbox, budget, sync, filter, coalescer, subtypes);
+
+        if(indexListener(functionListener, priority, ignoreCancelled)) {
+            // 添加到索引成功则解析函数句柄并注册到事件分发器
+            function.resolve();
+            functionListener.setMetrics(getMetrics(event, name));
+            if(coalescer != null)
+                coalesceList.add(functionListener);
+            parent.getEventDispatcher().register(functionListener, priority, ignoreCancelled);
             return true;
         }
         return false;
@@ -122,20 +276,43 @@ public class MoonLakeScript {
 
     public boolean unregisterListener(String name, Class<? extends Event> event) {
         // 卸载事件监听器: Function
-        ExecutorFunction function = new ExecutorFunction((Invocable) engine, name);
+        ExecutorFunction function = new ExecutorFunction(provider, (Invocable) engine, context.getBindings(ScriptContext.ENGINE_SCOPE), name);
         EventListener<ExecutorFunction> functionListener = new EventListener<>(function, event);
-        // remove 从集合成功则卸载事件
-        return functionSet.remove(functionListener) && unregisterListener(event, functionListener);
+        return unregisterListeners(functionListener);
     }
 
     public boolean registerListener(Object instance, String name, EventPriority priority, boolean ignoreCancelled, Class<? extends Event> event) {
         // 注册事件监听器: Method
-        ExecutorMethod method = new ExecutorMethod((Invocable) engine, instance, name);
-        EventListener<ExecutorMethod> methodListener = new EventListener<>(method, event);
+        return registerListener(instance, name, priority, ignoreCancelled, false, event);
+    }
 
-        if(methodSet.add(methodListener)) {
-            // add 到集合成功则注册事件
-            MoonLakeAPI.registerEvent(event, methodListener, priority, methodListener, parent, ignoreCancelled);
+    public boolean registerListener(Object instance, String name, EventPriority priority, boolean ignoreCancelled, boolean sync, Class<? extends Event> event) {
+        // 注册事件监听器: Method, sync 为 true 则异步事件不经过邮箱直接执行
+        return registerListener(instance, name, priority, ignoreCancelled, sync, null, event);
+    }
+
+    public boolean registerListener(Object instance, String name, EventPriority priority, boolean ignoreCancelled, boolean sync, Predicate<Event> filter, Class<? extends Event> event) {
+        // 注册事件监听器: Method, filter 不通过的事件不会调用脚本
+        return registerListener(instance, name, priority, ignoreCancelled, sync, filter, null, event);
+    }
+
+    public boolean registerListener(Object instance, String name, EventPriority priority, boolean ignoreCancelled, boolean sync, Predicate<Event> filter, EventCoalescer coalescer, Class<? extends Event> event) {
+        // 注册事件监听器: Method, coalescer 不为 null 则事件合并后在 tick 边界以数组交给处理器
+        return registerListener(instance, name, priority, ignoreCancelled, sync, filter, coalescer, Modifier.isAbstract(event.getModifiers()), event);
+    }
+
+    public boolean registerListener(Object instance, String name, EventPriority priority, boolean ignoreCancelled, boolean sync, Predicate<Event> filter, EventCoalescer coalescer, boolean subtypes, Class<? extends Event> event) {
+        // 注册事件监听器: Method, subtypes 为 true 则同时接收所有子类的事件, 抽象事件类必须为 true
+        ExecutorMethod method = new ExecutorMethod(provider, (Invocable) engine, instance, name);
+        EventListener<ExecutorMethod> methodListener = new EventListener<>(method, event, mailbox, budget, sync, filter, coalescer, subtypes);
+
+        if(indexListener(methodListener, priority, ignoreCancelled)) {
+            // 添加到索引成功则解析函数句柄并注册到事件分发器
+            method.resolve();
+            methodListener.setMetrics(getMetrics(event, name));
+            if(coalescer != null)
+                coalesceList.add(methodListener);
+            parent.getEventDispatcher().register(methodListener, priority, ignoreCancelled);
             return true;
         }
         return false;
@@ -143,10 +320,9 @@ public class MoonLakeScript {
 
     public boolean unregisterListener(Object instance, String name, Class<? extends Event> event) {
         // 卸载事件监听器: Method
-        ExecutorMethod method = new ExecutorMethod((Invocable) engine, instance, name);
+        ExecutorMethod method = new ExecutorMethod(provider, (Invocable) engine, instance, name);
         EventListener<ExecutorMethod> methodListener = new EventListener<>(method, event);
-        // remove 从集合成功则卸载事件
-        return methodSet.remove(methodListener) && unregisterListener(event, methodListener);
+        return unregisterListeners(methodListener);
     }
 
     public boolean registerListener(Map<String, Object> listener) {
@@ -162,13 +338,161 @@ public class MoonLakeScript {
         // 存在则进行加载
         EventPriority priority = (EventPriority) listener.getOrDefault("priority", EventPriority.NORMAL);
         boolean ignoreCancelled = (boolean) listener.getOrDefault("ignoreCancelled", false);
+        boolean sync = (boolean) listener.getOrDefault("sync", false);
+        // 可选的子类订阅: 抽象事件类 (例如 PlayerEvent) 总是接收所有子类的事件, 具体事件类默认只接收自身
+        boolean subtypes = (boolean) listener.getOrDefault("subtypes", Modifier.isAbstract(event.getModifiers()));
+        Validate.isTrue(subtypes || !Modifier.isAbstract(event.getModifiers()), "The listener abstract event must subscribe subtypes.");
+        // 可选的声明式过滤器: 编译为 Java 谓词, 不通过的事件不会进入脚本引擎
+        Object filterObject = listener.get("filter");
+        Validate.isTrue(filterObject == null || filterObject instanceof Map, "The listener filter not is object.");
+        Predicate<Event> filter = EventFilter.compile(event, (Map<?, ?>) filterObject);
+        // 可选的合并模式: mode -> coalesce
+        //                         key -> 合并的键, 每个键只保留最新的事件
+        //                         interval -> 交付间隔 tick, 默认 1
+        //                         max -> 每批最多的事件数量, 默认 64
+        EventCoalescer coalescer = null;
+        Object mode = listener.get("mode");
+        if(mode != null) {
+            Validate.isTrue("coalesce".equals(mode.toString()), "The listener mode '" + mode + "' not support.");
+            Object key = listener.get("key");
+            coalescer = new EventCoalescer(event, key != null ? key.toString() : null,
+                    ((Number) listener.getOrDefault("interval", 1)).intValue(),
+                    ((Number) listener.getOrDefault("max", 64)).intValue());
+        }
         // 注册事件监听器
-        return registerListener(listener, "handler", priority, ignoreCancelled, event);
+        return registerListener(listener, "handler", priority, ignoreCancelled, sync, filter, coalescer, subtypes, event);
     }
 
     /** TODO 命令处理区域 */
 
-    /** TODO 任务处理区域 */
+    /** 任务处理区域 */
+    private final Set<ScriptTask> taskSet = ConcurrentHashMap.newKeySet();
+
+    public int getTaskCount() {
+        // 获取尚未执行或重复执行的任务数量
+        return taskSet.size();
+    }
+
+    public ScriptTask runLater(Runnable task, long delay) {
+        // 在主线程延迟 delay tick 执行任务
+        return parent.getScheduler().schedule(task, budget, mailbox, taskSet, false, delay, 0L);
+    }
+
+    public ScriptTask runTimer(Runnable task, long delay, long period) {
+        // 在主线程延迟 delay tick 后每 period tick 执行任务
+        Validate.isTrue(period > 0L, "The task period must be greater than 0.");
+        return parent.getScheduler().schedule(task, budget, mailbox, taskSet, false, delay, period);
+    }
+
+    public ScriptTask runLaterAsync(Runnable task, long delay) {
+        // 在异步线程延迟 delay tick 执行任务, 邮箱模式下与脚本的其他处理器互斥
+        return parent.getScheduler().schedule(task, budget, mailbox, taskSet, true, delay, 0L);
+    }
+
+    public ScriptTask runTimerAsync(Runnable task, long delay, long period) {
+        // 在异步线程延迟 delay tick 后每 period tick 执行任务
+        Validate.isTrue(period > 0L, "The task period must be greater than 0.");
+        return parent.getScheduler().schedule(task, budget, mailbox, taskSet, true, delay, period);
+    }
+
+    /** 文件处理区域 */
+    private MoonLakeScriptFiles files;
+    private MoonLakeScriptStore store;
+
+    public File getDataFolder() {
+        // 获取脚本的数据目录: 插件目录下的 data/脚本名, 子目录中的脚本为 data/子目录/脚本名
+        return new File(new File(parent.getDataFolder(), "data"), name);
+    }
+
+    public synchronized MoonLakeScriptFiles getFiles() {
+        // 获取脚本的文件 API, 根目录为脚本的数据目录
+        if(files == null)
+            files = new MoonLakeScriptFiles(this, parent.getFilePool(), getDataFolder());
+        return files;
+    }
+
+    // 脚本文件, 由加载器设置, 用于在文件或目录删除后找到对应的脚本
+    File file;
+
+    // 正在被此脚本替换的同名旧脚本, 只在执行新脚本期间存在, 两个脚本共享同一个键值存储
+    MoonLakeScript predecessor;
+
+    public synchronized MoonLakeScriptStore getStore() {
+        // 获取脚本的键值存储, 第一次获取时从数据目录下的 store.log 恢复
+        // 替换旧脚本期间使用旧脚本的存储, 同一个日志文件不会被打开两次
+        if(store == null && predecessor != null)
+            store = predecessor.getStore();
+        if(store == null)
+            store = new MoonLakeScriptStore(this, parent.getFilePool(), new File(getDataFolder(), "store.log"),
+                    parent.getConfig().getLong("store.flush", 20L),
+                    parent.getConfig().getLong("store.compact", 1024L) * 1024L);
+        return store;
+    }
+
+    void releaseStore(MoonLakeScript other) {
+        // 替换脚本结束: 与另一个脚本共享的键值存储交给另一个脚本, 卸载此脚本时不再关闭
+        MoonLakeScriptStore shared;
+        synchronized (other) {
+            shared = other.store;
+        }
+        synchronized (this) {
+            if(store != null && store == shared)
+                store = null;
+        }
+    }
+
+    /** 状态处理区域 */
+    private MoonLakeScriptState state;
+
+    public synchronized MoonLakeScriptState getState() {
+        // 获取脚本的状态表
+        if(state == null)
+            state = new MoonLakeScriptState(parent.getStateEvictor());
+        return state;
+    }
+
+    /** 消息总线处理区域 */
+    private MoonLakeScriptBus bus;
+
+    public synchronized MoonLakeScriptBus getBus() {
+        // 获取脚本的消息总线 API, 所有脚本共享同一个总线
+        if(bus == null)
+            bus = new MoonLakeScriptBus(this, parent.getMessageBus());
+        return bus;
+    }
+
+    private final static class ListenerKey {
+
+        private final EventListener<?> listener;
+        private final EventPriority priority;
+        private final boolean ignoreCancelled;
+
+        private ListenerKey(EventListener<?> listener, EventPriority priority, boolean ignoreCancelled) {
+            this.listener = listener;
+            this.priority = priority;
+            this.ignoreCancelled = ignoreCancelled;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            ListenerKey that = (ListenerKey) o;
+
+            if (ignoreCancelled != that.ignoreCancelled) return false;
+            if (priority != that.priority) return false;
+            return listener.equals(that.listener);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = listener.hashCode();
+            result = 31 * result + priority.hashCode();
+            result = 31 * result + (ignoreCancelled ? 1 : 0);
+            return result;
+        }
+    }
 
     /** TODO 其他处理区域 */
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.api;
+
+import com.minecraft.moonlake.script.bus.MessageBus;
+import com.minecraft.moonlake.script.bus.Subscription;
+import com.minecraft.moonlake.validate.Validate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+public final class MoonLakeScriptBus {
+
+    private final MoonLakeScript script;
+    private final MessageBus bus;
+    private final Set<Subscription> subscriptionSet = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    public MoonLakeScriptBus(MoonLakeScript script, MessageBus bus) {
+        // 脚本的消息总线 API: 脚本卸载时自动取消所有订阅
+        Validate.notNull(bus, "The message bus object is null.");
+        this.script = script;
+        this.bus = bus;
+    }
+
+    public Subscription subscribe(String pattern, BiConsumer<Object, String> handler) {
+        return subscribe(pattern, handler, false);
+    }
+
+    public Subscription subscribe(String pattern, BiConsumer<Object, String> handler, boolean async) {
+        // 订阅主题模式, 处理函数的参数为 (消息, 主题)
+        // 默认在主线程每 tick 批量交付, async 则由总线的消费线程交付
+        Validate.isTrue(!closed, "The script '" + script.getName() + "' bus already closed.");
+        Subscription subscription = new Subscription(script.getName(), pattern, handler, async, script.getBudget(), script.getMailbox(), script.getLogger());
+        subscriptionSet.add(subscription);
+        bus.subscribe(subscription);
+        return subscription;
+    }
+
+    public boolean unsubscribe(Subscription subscription) {
+        // 取消指定的订阅, 只能取消此脚本自己的订阅
+        if(subscription == null || !subscriptionSet.remove(subscription))
+            return false;
+        bus.unsubscribe(Collections.singleton(subscription));
+        return true;
+    }
+
+    public int unsubscribe(String pattern) {
+        // 取消此脚本所有指定主题模式的订阅
+        List<Subscription> removed = new ArrayList<>();
+        for(Subscription subscription : subscriptionSet)
+            if(subscription.getPattern().equals(pattern) && subscriptionSet.remove(subscription))
+                removed.add(subscription);
+        bus.unsubscribe(removed);
+        return removed.size();
+    }
+
+    public boolean publish(String topic) {
+        return publish(topic, null);
+    }
+
+    public boolean publish(String topic, Object message) {
+        // 发布消息: 消息复制为只读的 Java 值, 订阅的脚本不会持有发布脚本的对象, 缓冲区已满则返回 false
+        Validate.isTrue(!closed, "The script '" + script.getName() + "' bus already closed.");
+        return bus.publish(topic, script.getProvider().export(message));
+    }
+
+    void close() {
+        // 脚本卸载: 取消所有订阅
+        closed = true;
+        bus.unsubscribe(new ArrayList<>(subscriptionSet));
+        subscriptionSet.clear();
+    }
+}
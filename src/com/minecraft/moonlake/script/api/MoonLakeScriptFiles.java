@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.api;
+
+import com.minecraft.moonlake.validate.Validate;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+
+public final class MoonLakeScriptFiles {
+
+    private final MoonLakeScript script;
+    private final SerialExecutor executor;
+    private final Path root;
+    private volatile boolean closed;
+
+    public MoonLakeScriptFiles(MoonLakeScript script, ExecutorService pool, File root) {
+        // 脚本的文件 API: 所有路径都相对于脚本自己的数据目录
+        // 文件操作在共享的 I/O 线程池执行, 同一个脚本的操作按调用顺序执行, 回调在主线程执行
+        Validate.notNull(pool, "The file io pool object is null.");
+        this.script = script;
+        this.executor = new SerialExecutor(pool);
+        this.root = root.toPath().toAbsolutePath().normalize();
+    }
+
+    public File getRoot() {
+        return root.toFile();
+    }
+
+    public CompletableFuture<String> readText(String path, BiConsumer<String, Throwable> callback) {
+        // 读取文本文件, 文件不存在则结果为 null
+        final Path file = resolve(path);
+        return submit(() -> Files.exists(file) ? new String(Files.readAllBytes(file), StandardCharsets.UTF_8) : null, callback);
+    }
+
+    public CompletableFuture<Void> writeText(String path, String text, BiConsumer<Void, Throwable> callback) {
+        // 写入文本文件: 先写入临时文件再替换, 避免读取到不完整的内容
+        final Path file = resolve(path);
+        final byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        return submit(() -> {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, data);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            return null;
+        }, callback);
+    }
+
+    public CompletableFuture<Void> append(String path, String text, BiConsumer<Void, Throwable> callback) {
+        // 追加文本到文件末尾, 文件不存在则创建
+        final Path file = resolve(path);
+        final byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        return submit(() -> {
+            Files.createDirectories(file.getParent());
+            Files.write(file, data, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            return null;
+        }, callback);
+    }
+
+    public CompletableFuture<String> readText(String path) {
+        return readText(path, null);
+    }
+
+    public CompletableFuture<Void> writeText(String path, String text) {
+        return writeText(path, text, null);
+    }
+
+    public CompletableFuture<Void> append(String path, String text) {
+        return append(path, text, null);
+    }
+
+    void close() {
+        // 脚本卸载: 拒绝新的操作, 已提交的写入仍然会完成但是不再回调
+        closed = true;
+    }
+
+    private Path resolve(String path) {
+        // 解析相对于数据目录的路径, 不允许访问数据目录之外的文件
+        Validate.notNull(path, "The file path object is null.");
+        Path file = root.resolve(path).normalize();
+        Validate.isTrue(file.startsWith(root) && !file.equals(root), "The file path '" + path + "' not in script data folder.");
+        return file;
+    }
+
+    private <T> CompletableFuture<T> submit(Callable<T> operation, BiConsumer<T, Throwable> callback) {
+        Validate.isTrue(!closed, "The script '" + script.getName() + "' files already closed.");
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            T result = null;
+            Throwable error = null;
+            try {
+                result = operation.call();
+                future.complete(result);
+            } catch (Throwable e) {
+                error = e;
+                future.completeExceptionally(e);
+            }
+            if(closed)
+                return;
+            if(callback != null) {
+                // 回调交给调度器在下一个 tick 的主线程执行, 计入脚本的执行时间预算
+                final T finalResult = result;
+                final Throwable finalError = error;
+                script.runLater(() -> callback.accept(finalResult, finalError), 0L);
+            } else if(error != null) {
+                script.getLogger().log(Level.WARNING, "The script '" + script.getName() + "' file operation exception", error);
+            }
+        });
+        return future;
+    }
+
+    public static ExecutorService newPool(int threads) {
+        // 所有脚本共享的 I/O 线程池
+        return Executors.newFixedThreadPool(Math.max(threads, 1), new IOThreadFactory());
+    }
+
+    private final static class IOThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MoonLakeScript-IO-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -18,44 +18,111 @@
 
 package com.minecraft.moonlake.script.api;
 
+import com.minecraft.moonlake.exception.MoonLakeException;
 import com.minecraft.moonlake.script.ScriptPlugin;
+import com.minecraft.moonlake.script.engine.ScriptEngineProvider;
+import com.minecraft.moonlake.script.engine.ScriptEngineRegistry;
 import com.minecraft.moonlake.validate.Validate;
 
 import javax.annotation.Nonnull;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
-import javax.script.ScriptEngineManager;
 import java.io.File;
-import java.io.FileReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public final class MoonLakeScriptLoader {
 
     private final ScriptPlugin main;
     private final Map<String, MoonLakeScript> scriptMap;
+    private final Map<String, CompiledCache> compiledMap;
     private final File scriptDir;
+    private final boolean persistentCache;
+    private final ScriptEngineProvider provider;
+    private final Map<String, ScriptEngine> sharedEngineMap;
+    private final Map<String, MoonLakeScriptStub> stubMap;
+    private final long idleTicks;
+    private final long activateTimeout;
+
+    // 脚本头部的指令注释: // @名称 值
+    private final static Pattern HEADER_PATTERN = Pattern.compile("^//\\s*@(\\w+)\\s+(.*?)\\s*$");
 
     public MoonLakeScriptLoader(ScriptPlugin main) {
         this.main = main;
         this.scriptMap = new HashMap<>();
+        this.compiledMap = new ConcurrentHashMap<>();
+        this.stubMap = new HashMap<>();
         this.scriptDir = new File(main.getDataFolder(), File.separator + "scripts");
         this.checkDir();
+        // 共享模式则使用同一个引擎提供者的脚本共享同一个引擎, 每个脚本拥有独立的上下文对象
+        this.sharedEngineMap = "shared".equalsIgnoreCase(main.getConfig().getString("engine.mode", "isolated")) ? new ConcurrentHashMap<>() : null;
+        // 默认的引擎提供者, 脚本可以通过头部的 @engine 指令单独指定
+        String providerName = main.getConfig().getString("engine.provider", "nashorn");
+        this.provider = ScriptEngineRegistry.INSTANCE.getProvider(providerName, "nashorn");
+        if(!provider.getName().equalsIgnoreCase(providerName))
+            main.getLogger().warning("The script engine '" + providerName + "' not available, use the '" + provider.getName() + "' engine.");
+        // 是否开启引擎的持久化代码缓存
+        this.persistentCache = main.getConfig().getBoolean("engine.code-cache", true);
+        // 延迟激活的脚本空闲多少 tick 后卸载, 脚本可以通过头部的 @idle 指令单独指定 (秒)
+        this.idleTicks = main.getConfig().getLong("lazy.idle", 300L) * 20L;
+        // 异步事件第一次触发时等待主线程加载脚本的最长时间 (毫秒)
+        this.activateTimeout = Math.max(main.getConfig().getLong("lazy.activate-timeout", 1000L), 1L);
     }
 
     public ScriptPlugin getMain() {
         return main;
     }
 
+    long getActivateTimeout() {
+        return activateTimeout;
+    }
+
     private void checkDir() {
         // 检测目录是否存在
         if(!scriptDir.exists())
             scriptDir.mkdirs();
     }
 
+    public boolean isShared() {
+        // 获取是否为共享引擎模式
+        return sharedEngineMap != null;
+    }
+
+    public ScriptEngineProvider getProvider() {
+        // 获取默认的引擎提供者
+        return provider;
+    }
+
     public void loadScript() {
         // 加载脚本目录的所有脚本
+        long start = System.nanoTime();
+        long heap = usedHeap();
         loadScript(scriptDir);
+        // 输出总耗时以及堆内存变化, 用于对比两种引擎模式
+        getMain().getLogger().info("The " + scriptMap.size() + " script files loaded" + (stubMap.isEmpty() ? "" : " and " + stubMap.size() + " deferred") + " in " + elapsed(start) + "ms. (engine: " + provider.getName() + ", mode: " + (isShared() ? "shared" : "isolated") + ", heap: " + ((usedHeap() - heap) / 1024L) + "KB)");
     }
 
     public void loadScript(String file) {
@@ -69,55 +136,504 @@ public final class MoonLakeScriptLoader {
         Validate.notNull(file, "The file object is null.");
         Validate.isTrue(file.exists(), "The file object not exists.");
 
+        List<File> scriptFiles = new ArrayList<>();
+        collectScriptFile(file, scriptFiles);
+        loadScriptFile(scriptFiles, false);
+    }
+
+    public void reloadScript(Collection<File> files) {
+        // 增量重新加载: 已删除的脚本卸载, 已修改的脚本重新编译并替换, 内容未变化的脚本不做处理
+        List<File> scriptFiles = new ArrayList<>();
+        for(File file : files) {
+            // 已删除的文件或目录, 以及目录内已经不存在的文件 (事件溢出时为整个脚本目录) 对应的脚本和存根全部卸载
+            unloadMissing(file);
+            if(file.exists())
+                collectScriptFile(file, scriptFiles);
+        }
+        loadScriptFile(scriptFiles, true);
+    }
+
+    private void unloadMissing(File file) {
+        // 按文件路径匹配已加载的脚本, 延迟激活的存根以及编译缓存, 文件已经不存在则卸载
+        String path = file.getAbsolutePath();
+        String prefix = path + File.separator;
+        Predicate<File> missing = (scriptFile) -> {
+            String scriptPath = scriptFile.getAbsolutePath();
+            return (scriptPath.equals(path) || scriptPath.startsWith(prefix)) && !scriptFile.exists();
+        };
+        new ArrayList<>(compiledMap.keySet()).stream()
+                .filter((scriptPath) -> missing.test(new File(scriptPath)))
+                .forEach(compiledMap::remove);
+        Set<String> nameSet = new LinkedHashSet<>();
+        stubMap.forEach((name, stub) -> {
+            if(missing.test(stub.getFile()))
+                nameSet.add(name);
+        });
+        scriptMap.forEach((name, script) -> {
+            if(script.file != null && missing.test(script.file))
+                nameSet.add(name);
+        });
+        nameSet.forEach(this::unloadScript);
+    }
+
+    private void loadScriptFile(List<File> scriptFiles, boolean skipUnchanged) {
+        // 加载指定的脚本文件列表
+        if(scriptFiles.isEmpty())
+            return;
+        // 第一阶段: 使用有界的线程池并行读取以及编译所有脚本文件
+        int parallelism = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), scriptFiles.size()));
+        ExecutorService compiler = Executors.newFixedThreadPool(parallelism, new CompilerThreadFactory());
+
+        try {
+            List<Future<Compilation>> compilationList = new ArrayList<>(scriptFiles.size());
+            for(File scriptFile : scriptFiles)
+                compilationList.add(compiler.submit(() -> compileScriptFile(scriptFile, false)));
+            // 第二阶段: 在当前线程按照确定的顺序执行脚本以及注册监听器
+            for(int i = 0; i < scriptFiles.size(); i++)
+                loadScriptFile(scriptFiles.get(i), compilationList.get(i), skipUnchanged);
+        } finally {
+            compiler.shutdown();
+        }
+    }
+
+    private void collectScriptFile(File file, List<File> scriptFiles) {
+        // 递归收集所有的脚本文件, 按文件名排序保证加载顺序确定
+        if(file.isFile()) {
+            scriptFiles.add(file);
+            return;
+        }
         File[] dataFiles = file.listFiles();
 
         if(dataFiles != null && dataFiles.length > 0) {
             // 不为 null 并且长度大于 0 则加载
+            Arrays.sort(dataFiles);
             for(File dataFile : dataFiles) {
                 // 循环遍历数据文件
-                if(dataFile.exists() && dataFile.isDirectory()) {
-                    // 存在并且则目录则继续加载
-                    loadScript(dataFile);
-                    continue;
-                }
-                if(dataFile.exists() && dataFile.isFile()) {
-                    // 存在并且是文件则读取脚本
-                    loadScriptFile(dataFile);
-                }
+                if(dataFile.exists())
+                    collectScriptFile(dataFile, scriptFiles);
+            }
+        }
+    }
+
+    private Compilation compileScriptFile(@Nonnull File realFile, boolean activate) throws Exception {
+        // 编译指定脚本文件: 此函数在编译线程池中执行, 激活延迟加载的脚本时在主线程执行
+        long start = System.nanoTime();
+        byte[] data = Files.readAllBytes(realFile.toPath());
+        String digest = digest(data);
+        CompiledCache cache = compiledMap.get(realFile.getAbsolutePath());
+
+        if(cache != null && cache.matches(data.length, digest))
+            // 脚本未修改则复用已编译的脚本
+            return new Compilation(cache, true, System.nanoTime() - start);
+        // 脚本已修改或未编译则编译脚本, 非共享模式则创建新的引擎
+        String source = new String(data, StandardCharsets.UTF_8);
+        Map<String, String> headerMap = readHeader(source);
+        if(!activate && headerMap.containsKey("events")) {
+            // 声明了事件的脚本延迟激活: 只读取头部, 第一次触发声明的事件时才编译以及执行
+            MoonLakeScriptStub stub = new MoonLakeScriptStub(this, realFile, getScriptName(realFile), readEvents(headerMap.get("events")), readIdle(headerMap.get("idle")), data.length, digest);
+            return new Compilation(stub, System.nanoTime() - start);
+        }
+        ScriptEngineProvider provider = getProvider(headerMap.get("engine"));
+        ScriptEngine engine = isShared() ? getSharedEngine(provider) : provider.createEngine(ScriptPlugin.class.getClassLoader(), persistentCache);
+        CompiledScript compiled = provider.compile(engine, realFile.getPath(), source);
+        return new Compilation(new CompiledCache(provider, engine, compiled, data.length, digest), false, System.nanoTime() - start);
+    }
+
+    private ScriptEngineProvider getProvider(String name) {
+        // 获取脚本指定的引擎提供者, 未指定则使用默认的引擎提供者
+        return name != null ? ScriptEngineRegistry.INSTANCE.getProvider(name) : provider;
+    }
+
+    private ScriptEngine getSharedEngine(ScriptEngineProvider provider) {
+        // 获取指定引擎提供者的共享引擎, 第一次使用时创建
+        return sharedEngineMap.computeIfAbsent(provider.getName(), name -> provider.createEngine(ScriptPlugin.class.getClassLoader(), persistentCache));
+    }
+
+    private static Map<String, String> readHeader(String source) {
+        // 读取脚本开头注释中的单行指令, 跳过块注释 (例如版权声明), 遇到第一行代码则停止
+        Map<String, String> headerMap = new HashMap<>();
+        boolean block = false;
+        int start = 0;
+        while(start < source.length()) {
+            int end = source.indexOf('\n', start);
+            if(end == -1)
+                end = source.length();
+            String line = source.substring(start, end).trim();
+            start = end + 1;
+            if(block || line.startsWith("/*")) {
+                int close = line.indexOf("*/", block ? 0 : 2);
+                block = close == -1;
+                if(!block && close + 2 < line.length())
+                    // 块注释结束后同一行还有代码
+                    break;
+                continue;
             }
+            if(line.isEmpty())
+                continue;
+            if(!line.startsWith("//"))
+                break;
+            Matcher matcher = HEADER_PATTERN.matcher(line);
+            if(matcher.matches())
+                headerMap.putIfAbsent(matcher.group(1), matcher.group(2));
         }
+        return headerMap;
+    }
+
+    private static List<String> readEvents(String value) {
+        // 读取 @events 指令声明的事件名称, 以逗号或空白分隔
+        List<String> eventList = new ArrayList<>();
+        for(String event : value.split("[,\\s]+"))
+            if(!event.isEmpty())
+                eventList.add(event);
+        Validate.isTrue(!eventList.isEmpty(), "The script @events not has event.");
+        return Collections.unmodifiableList(eventList);
     }
 
-    private void loadScriptFile(@Nonnull File realFile) {
+    private long readIdle(String value) {
+        // 读取 @idle 指令的空闲卸载时间 (秒), 未指定则使用配置的时间
+        if(value == null)
+            return idleTicks;
+        try {
+            return Long.parseLong(value) * 20L;
+        } catch (NumberFormatException e) {
+            throw new MoonLakeException("The script @idle '" + value + "' not is number.");
+        }
+    }
+
+    private void loadScriptFile(@Nonnull File realFile, Future<Compilation> future, boolean skipUnchanged) {
         // 加载指定脚本文件
+        String scriptName = getScriptName(realFile);
+        Compilation compilation;
+
+        try {
+            try {
+                compilation = future.get();
+            } catch (ExecutionException e) {
+                // 编译失败则只影响当前脚本文件
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        } catch (Exception e) {
+            compiledMap.remove(realFile.getAbsolutePath());
+            getMain().getLogger().log(Level.SEVERE, "The load script file '" + realFile.getName() + "' exception", e);
+            return;
+        }
+        if(compilation.stub != null) {
+            // 延迟激活的脚本只注册存根
+            deferScriptFile(realFile, compilation, skipUnchanged);
+            return;
+        }
+        if(skipUnchanged && compilation.cached && scriptMap.containsKey(scriptName))
+            // 内容未变化并且已经加载则不做处理
+            return;
+        if(!compilation.cached) {
+            // 脚本已修改并且不再声明事件则卸载旧的存根
+            MoonLakeScriptStub stub = stubMap.remove(scriptName);
+            if(stub != null)
+                stub.unregister();
+        }
+        evalScriptFile(realFile, compilation);
+    }
+
+    private MoonLakeScript evalScriptFile(@Nonnull File realFile, Compilation compilation) {
+        // 执行已编译的脚本文件, 失败则返回 null
         String fileName= realFile.getName();
-        String scriptName = fileName.substring(fileName.lastIndexOf("."));
-        ScriptEngine engine = new ScriptEngineManager().getEngineByName("javascript");
-        MoonLakeScript script = new MoonLakeScript(getMain(), scriptName, engine);
+        String scriptName = getScriptName(realFile);
+        String path = realFile.getAbsolutePath();
+        CompiledCache cache = compilation.cache;
+        // 执行成功后才替换: 旧的脚本在新的脚本执行期间继续运行, 新的脚本执行失败则保留旧的脚本
+        MoonLakeScript loaded = scriptMap.get(scriptName);
+        MoonLakeScript script = null;
 
         try {
-            engine.put("plugin", script);
-            engine.eval(new FileReader(realFile));
+            long start = System.nanoTime();
+            // 每个脚本都拥有全新的上下文对象, 保证 plugin 以及脚本全局变量的隔离
+            ScriptContext context = cache.provider.createContext(cache.engine);
+            context.setAttribute(ScriptEngine.FILENAME, path, ScriptContext.ENGINE_SCOPE);
+            if(!isShared())
+                // 非共享模式则引擎的默认上下文即为脚本的上下文
+                cache.engine.setContext(context);
+            script = new MoonLakeScript(getMain(), scriptName, cache.provider, cache.engine, context);
+            script.predecessor = loaded;
+            script.file = realFile;
+            context.setAttribute("plugin", script, ScriptContext.ENGINE_SCOPE);
+            cache.compiled.eval(context);
+            script.predecessor = null;
+            compiledMap.put(path, cache);
+            // 执行成功后卸载旧的脚本 (调用卸载钩子), 共享的键值存储交给新的脚本
+            if(loaded != null) {
+                loaded.releaseStore(script);
+                loaded.unload();
+            }
             // put 到 map 缓存
             scriptMap.put(scriptName, script);
             // 提示信息已成功加载
-            getMain().getLogger().info("The script file '" + fileName + "' success loaded.");
+            getMain().getLogger().info("The script file '" + fileName + "' success loaded. (engine: " + cache.provider.getName() + ", compile: " + millis(compilation.nanos) + "ms" + (compilation.cached ? " cached" : "") + ", eval: " + elapsed(start) + "ms)");
+            return script;
         } catch (Exception e) {
-            getMain().getLogger().log(Level.SEVERE, "The load script file '" + fileName + "' exception", e);
+            // 执行失败则卸载新的脚本已经注册的部分, 旧的脚本保持运行
+            if(script != null) {
+                script.predecessor = null;
+                if(loaded != null)
+                    script.releaseStore(loaded);
+                script.unload();
+            }
+            if(loaded != null) {
+                if(!isShared() && loaded.getEngine() == cache.engine)
+                    // 复用同一个引擎时恢复旧脚本的默认上下文
+                    cache.engine.setContext(loaded.getContext());
+                getMain().getLogger().log(Level.SEVERE, "The reload script file '" + fileName + "' exception, the previous script keeps running", e);
+            } else {
+                compiledMap.remove(path);
+                getMain().getLogger().log(Level.SEVERE, "The load script file '" + fileName + "' exception", e);
+            }
+            return null;
         }
     }
 
-    public void unloadScript(String file) {
-        // 卸载指定脚本文件
+    private void deferScriptFile(@Nonnull File realFile, Compilation compilation, boolean skipUnchanged) {
+        // 注册延迟激活脚本的存根, 注册成功后才卸载旧的脚本以及存根
+        String scriptName = getScriptName(realFile);
+        MoonLakeScriptStub stub = compilation.stub;
+        MoonLakeScriptStub loaded = stubMap.get(scriptName);
+        if(skipUnchanged && loaded != null && loaded.isDormant() && loaded.matches(stub))
+            // 内容未变化并且仍在等待激活则不做处理
+            return;
+        try {
+            stub.register();
+        } catch (Exception e) {
+            getMain().getLogger().log(Level.SEVERE, "The load script file '" + realFile.getName() + "' exception", e);
+            return;
+        }
+        if(loaded != null)
+            loaded.unregister();
+        MoonLakeScript script = scriptMap.remove(scriptName);
+        if(script != null)
+            script.unload();
+        compiledMap.remove(realFile.getAbsolutePath());
+        stubMap.put(scriptName, stub);
+        getMain().getLogger().info("The script file '" + realFile.getName() + "' deferred until " + String.join(", ", stub.getEvents()) + " fires. (read: " + millis(compilation.nanos) + "ms)");
     }
 
-    public void unloadScript(File file) {
+    MoonLakeScript activateScript(MoonLakeScriptStub stub) {
+        // 由存根在主线程调用: 编译以及执行脚本, 返回 null 则表示已经激活或者加载失败
+        if(!stub.isDormant() || stubMap.get(stub.getName()) != stub)
+            return null;
+        File realFile = stub.getFile();
+        MoonLakeScript script = null;
+        try {
+            script = evalScriptFile(realFile, compileScriptFile(realFile, true));
+        } catch (Exception e) {
+            getMain().getLogger().log(Level.SEVERE, "The load script file '" + realFile.getName() + "' exception", e);
+        }
+        // 执行之后再卸载触发器, 脚本的监听器所在的通道不会因为变为空而被重建
+        stub.unregister();
+        if(script == null) {
+            stubMap.remove(stub.getName());
+            getMain().getLogger().warning("The script '" + stub.getName() + "' activation failed, it will be loaded again after the file changes.");
+        }
+        return script;
+    }
+
+    private void deactivateScript(MoonLakeScriptStub stub) {
+        // 卸载空闲的延迟激活脚本以及编译缓存, 重新注册存根等待下一次触发
+        MoonLakeScript script = scriptMap.remove(stub.getName());
+        if(script != null)
+            script.unload();
+        compiledMap.remove(stub.getFile().getAbsolutePath());
+        try {
+            stub.register();
+        } catch (Exception e) {
+            stubMap.remove(stub.getName());
+            getMain().getLogger().log(Level.SEVERE, "The defer script '" + stub.getName() + "' exception", e);
+            return;
+        }
+        getMain().getLogger().info("The script '" + stub.getName() + "' idle for " + (stub.getIdleTicks() / 20L) + "s, unloaded until " + String.join(", ", stub.getEvents()) + " fires.");
+    }
+
+    private static String digest(byte[] data) throws Exception {
+        // 计算脚本内容的 SHA-1 摘要
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+        byte[] hash = messageDigest.digest(data);
+        StringBuilder builder = new StringBuilder(hash.length * 2);
+        for(byte value : hash)
+            builder.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+        return builder.toString();
+    }
+
+    private static long usedHeap() {
+        // 获取当前已使用的堆内存
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static String elapsed(long start) {
+        // 获取从开始到现在经过的毫秒数
+        return millis(System.nanoTime() - start);
+    }
+
+    private static String millis(long nanos) {
+        // 将纳秒格式化为毫秒
+        return String.format("%.2f", nanos / 1000000d);
+    }
+
+    public boolean unloadScript(String name) {
+        // 卸载指定名称的脚本
+        Validate.notNull(name, "The name object is null.");
+        MoonLakeScriptStub stub = stubMap.remove(name);
+        if(stub != null)
+            stub.unregister();
+        MoonLakeScript script = scriptMap.remove(name);
+        if(script == null)
+            return stub != null;
+        script.unload();
+        getMain().getLogger().info("The script '" + name + "' success unloaded.");
+        return true;
+    }
+
+    public boolean unloadScript(File file) {
         // 卸载指定脚本文件
+        Validate.notNull(file, "The file object is null.");
+        compiledMap.remove(file.getAbsolutePath());
+        return unloadScript(getScriptName(file));
+    }
+
+    public MoonLakeScript getScript(String name) {
+        // 获取指定名称的已加载脚本
+        return scriptMap.get(name);
+    }
+
+    public Collection<MoonLakeScript> getScripts() {
+        // 获取所有已加载的脚本
+        return Collections.unmodifiableCollection(scriptMap.values());
+    }
+
+    public boolean isEngineInUse(ScriptEngine engine) {
+        // 获取指定引擎是否仍然由编译缓存或已加载的脚本使用
+        for(CompiledCache cache : compiledMap.values())
+            if(cache.engine == engine)
+                return true;
+        for(MoonLakeScript script : scriptMap.values())
+            if(script.getEngine() == engine)
+                return true;
+        return false;
+    }
+
+    public File getScriptDir() {
+        return scriptDir;
+    }
+
+    private String getScriptName(File file) {
+        // 脚本名称为相对于脚本目录的路径 (以 / 分隔) 并且不包含扩展名, 不同子目录中的同名文件为不同的脚本
+        // 脚本目录之外的文件则只使用文件名
+        Path root = scriptDir.getAbsoluteFile().toPath().normalize();
+        Path path = file.getAbsoluteFile().toPath().normalize();
+        String name = path.startsWith(root) && !path.equals(root) ? root.relativize(path).toString().replace(File.separatorChar, '/') : file.getName();
+        int index = name.lastIndexOf('.');
+        return index > name.lastIndexOf('/') + 1 ? name.substring(0, index) : name;
     }
 
     public void unloadAll() {
-        // 卸载全部的脚本文件
+        // 卸载全部的脚本文件以及延迟激活的存根
+        stubMap.values().forEach(MoonLakeScriptStub::unregister);
+        stubMap.clear();
         scriptMap.values().forEach(MoonLakeScript::unload);
         scriptMap.clear();
     }
+
+    public void tick() {
+        // 由服务器主线程每 tick 调用: 处理所有脚本邮箱内的投递, 交付合并的事件并结算执行时间预算
+        // 处理器可能触发延迟脚本的事件或者重新加载脚本而修改 scriptMap, 遍历快照并跳过已经卸载的脚本
+        for(MoonLakeScript script : new ArrayList<>(scriptMap.values())) {
+            if(script.getMailbox() != null && isLoaded(script))
+                script.getMailbox().drain(script.getBudget());
+            if(isLoaded(script))
+                script.flush();
+            script.getBudget().tick();
+        }
+        if(!stubMap.isEmpty())
+            checkIdle();
+    }
+
+    private boolean isLoaded(MoonLakeScript script) {
+        // 获取脚本是否仍然是此名称的已加载脚本
+        return scriptMap.get(script.getName()) == script;
+    }
+
+    private void checkIdle() {
+        // 已激活的延迟脚本连续空闲超过指定时间, 没有未执行的任务并且没有被挂起则卸载
+        List<MoonLakeScriptStub> idleList = null;
+        for(MoonLakeScriptStub stub : stubMap.values()) {
+            if(stub.isDormant() || stub.getIdleTicks() <= 0L)
+                continue;
+            MoonLakeScript script = scriptMap.get(stub.getName());
+            if(script == null || script.getTaskCount() > 0 || script.getBudget().isSuspended() || script.getBudget().getIdleTicks() < stub.getIdleTicks())
+                continue;
+            if(idleList == null)
+                idleList = new ArrayList<>();
+            idleList.add(stub);
+        }
+        if(idleList != null)
+            idleList.forEach(this::deactivateScript);
+    }
+
+    public void clearCache() {
+        // 清除内存中的已编译脚本缓存
+        compiledMap.clear();
+    }
+
+    private final static class Compilation {
+
+        private final CompiledCache cache;
+        private final MoonLakeScriptStub stub;
+        private final boolean cached;
+        private final long nanos;
+
+        private Compilation(CompiledCache cache, boolean cached, long nanos) {
+            this.cache = cache;
+            this.stub = null;
+            this.cached = cached;
+            this.nanos = nanos;
+        }
+
+        private Compilation(MoonLakeScriptStub stub, long nanos) {
+            this.cache = null;
+            this.stub = stub;
+            this.cached = false;
+            this.nanos = nanos;
+        }
+    }
+
+    private final static class CompilerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MoonLakeScript-Compiler-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private final static class CompiledCache {
+
+        private final ScriptEngineProvider provider;
+        private final ScriptEngine engine;
+        private final CompiledScript compiled;
+        private final long size;
+        private final String digest;
+
+        private CompiledCache(ScriptEngineProvider provider, ScriptEngine engine, CompiledScript compiled, long size, String digest) {
+            this.provider = provider;
+            this.engine = engine;
+            this.compiled = compiled;
+            this.size = size;
+            this.digest = digest;
+        }
+
+        private boolean matches(long size, String digest) {
+            // 文件大小以及内容摘要一致则表示脚本未修改
+            return this.size == size && this.digest.equals(digest);
+        }
+    }
 }
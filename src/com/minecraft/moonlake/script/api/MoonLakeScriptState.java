@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.api;
+
+import com.minecraft.moonlake.script.state.StateEvictor;
+import com.minecraft.moonlake.script.state.StateMap;
+import com.minecraft.moonlake.validate.Validate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public final class MoonLakeScriptState {
+
+    private final StateEvictor evictor;
+    private final Map<String, StateMap> mapMap = new HashMap<>();
+
+    public MoonLakeScriptState(StateEvictor evictor) {
+        // 脚本的状态表: 以玩家 UUID 或者实体 id 为键, 玩家退出, 实体死亡或者所在区块和世界卸载时自动移除
+        Validate.notNull(evictor, "The state evictor object is null.");
+        this.evictor = evictor;
+    }
+
+    public StateMap players(String name) {
+        return players(name, null);
+    }
+
+    public StateMap players(String name, Map<String, Object> options) {
+        // 获取或者创建以玩家为键的状态表
+        return get(name, StateMap.Type.PLAYER, options);
+    }
+
+    public StateMap entities(String name) {
+        return entities(name, null);
+    }
+
+    public StateMap entities(String name, Map<String, Object> options) {
+        // 获取或者创建以实体为键的状态表
+        return get(name, StateMap.Type.ENTITY, options);
+    }
+
+    private synchronized StateMap get(String name, StateMap.Type type, Map<String, Object> options) {
+        // 可选的属性: ttl -> 最后一次写入后的存活时间 (毫秒)
+        //                     max -> 最大条目数量, 超出时淘汰最久未写入的条目
+        Validate.notNull(name, "The state map name object is null.");
+        StateMap map = mapMap.get(name);
+        if(map != null) {
+            Validate.isTrue(map.getType() == type, "The state map '" + name + "' already exists as " + map.getType() + ".");
+            return map;
+        }
+        long ttl = options != null ? ((Number) options.getOrDefault("ttl", 0)).longValue() : 0L;
+        int max = options != null ? ((Number) options.getOrDefault("max", 0)).intValue() : 0;
+        map = new StateMap(name, type, ttl, max);
+        mapMap.put(name, map);
+        evictor.register(map);
+        return map;
+    }
+
+    synchronized void close() {
+        // 脚本卸载: 释放所有状态表持有的脚本对象
+        for(StateMap map : mapMap.values()) {
+            evictor.unregister(map);
+            map.clear();
+        }
+        mapMap.clear();
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.api;
+
+import com.minecraft.moonlake.exception.MoonLakeException;
+import com.minecraft.moonlake.script.execute.ScriptTask;
+import com.minecraft.moonlake.validate.Validate;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+public final class MoonLakeScriptStore {
+
+    // 日志记录: [int 长度][int CRC32][byte 操作][int 键长度][键][值], 长度为 0 表示日志末尾
+    private final static int HEADER = 8;
+    private final static byte PUT = 1;
+    private final static byte REMOVE = 2;
+    private final static int INITIAL_CAPACITY = 64 * 1024;
+    // JDK 9 以上无法访问 DirectByteBuffer.cleaner, 通过 Unsafe.invokeCleaner 解除映射, JDK 8 则为 null
+    private final static Object UNSAFE;
+    private final static Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+        } catch (Exception e) {
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    // 正在关闭的存储: 日志文件路径 -> 关闭完成的 future, 重新打开同一个日志之前需要等待关闭完成
+    private final static Map<Path, CompletableFuture<Void>> CLOSING_MAP = new ConcurrentHashMap<>();
+
+    // 只保留脚本名称以及日志, 替换脚本时存储会交给新的脚本, 不能引用旧的脚本
+    private final String name;
+    private final Logger logger;
+    private final SerialExecutor executor;
+    private final Path path;
+    private final long compactThreshold;
+    private final Map<String, String> valueMap = new ConcurrentHashMap<>();
+    private Map<String, String> pendingMap = new LinkedHashMap<>();
+    private ScriptTask flushTask;
+    private volatile boolean closed;
+
+    // 以下字段只由 I/O 线程访问
+    private final Map<String, Integer> sizeMap = new HashMap<>();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int end;
+    private long liveBytes;
+
+    public MoonLakeScriptStore(MoonLakeScript script, ExecutorService pool, File file, long flushInterval, long compactThreshold) {
+        // 脚本的键值存储: 内存中保存所有的键值, 修改在主线程立即可见
+        // 修改先合并在内存中, 每 flushInterval tick 在 I/O 线程批量追加到内存映射的日志文件
+        // 日志中的无效数据超过一半并且大于 compactThreshold 字节时在 I/O 线程压缩
+        Validate.notNull(pool, "The store io pool object is null.");
+        this.name = script.getName();
+        this.logger = script.getLogger();
+        this.executor = new SerialExecutor(pool);
+        this.path = file.toPath().toAbsolutePath();
+        this.compactThreshold = compactThreshold;
+        awaitClosing(path);
+        try {
+            Files.createDirectories(path.getParent());
+            open();
+            recover(true);
+        } catch (IOException e) {
+            throw new MoonLakeException("The script '" + name + "' store open exception.", e);
+        }
+        this.flushTask = script.parent.getScheduler().schedule(this::flush, null, null, null, false, flushInterval, Math.max(flushInterval, 1L));
+    }
+
+    public String get(String key) {
+        return valueMap.get(key);
+    }
+
+    public String getOrDefault(String key, String def) {
+        return valueMap.getOrDefault(key, def);
+    }
+
+    public boolean contains(String key) {
+        return valueMap.containsKey(key);
+    }
+
+    public int size() {
+        return valueMap.size();
+    }
+
+    public List<String> keys() {
+        return Collections.unmodifiableList(new ArrayList<>(valueMap.keySet()));
+    }
+
+    public void put(String key, String value) {
+        // 设置键值, 值为 null 则移除
+        Validate.notNull(key, "The store key object is null.");
+        if(value == null) {
+            remove(key);
+            return;
+        }
+        synchronized (this) {
+            // 内存中的键值以及待写入的修改在同一个锁内更新, flush 取出的批次与内存中的键值一致
+            Validate.isTrue(!closed, "The script '" + name + "' store already closed.");
+            valueMap.put(key, value);
+            pendingMap.put(key, value);
+        }
+    }
+
+    public void remove(String key) {
+        Validate.notNull(key, "The store key object is null.");
+        synchronized (this) {
+            Validate.isTrue(!closed, "The script '" + name + "' store already closed.");
+            if(valueMap.remove(key) == null)
+                return;
+            // null 表示移除
+            pendingMap.put(key, null);
+        }
+    }
+
+    public CompletableFuture<Void> flush() {
+        // 将合并的修改提交到 I/O 线程追加到日志
+        Map<String, String> batch;
+        synchronized (this) {
+            if(pendingMap.isEmpty())
+                return CompletableFuture.completedFuture(null);
+            batch = pendingMap;
+            pendingMap = new LinkedHashMap<>();
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                if(buffer == null)
+                    // 上一次压缩替换失败并且重新打开也失败, 再次尝试打开日志
+                    reopen();
+                write(batch);
+                if(end > compactThreshold && liveBytes * 2L < end)
+                    compact();
+                future.complete(null);
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+                logger.log(Level.SEVERE, "The script '" + name + "' store flush exception", e);
+            }
+        });
+        return future;
+    }
+
+    void close() {
+        // 脚本卸载: 在 I/O 线程写入剩余的修改并关闭文件, 主线程不会等待
+        // 新加载的脚本打开同一个存储时会等待关闭完成
+        synchronized (this) {
+            if(closed)
+                return;
+            closed = true;
+        }
+        if(flushTask != null)
+            flushTask.cancel();
+        CompletableFuture<Void> closeFuture = new CompletableFuture<>();
+        CLOSING_MAP.put(path, closeFuture);
+        flush().handle((result, error) -> null)
+                .thenRunAsync(this::release, executor)
+                .whenComplete((result, error) -> {
+                    CLOSING_MAP.remove(path, closeFuture);
+                    closeFuture.complete(null);
+                });
+    }
+
+    private static void awaitClosing(Path path) {
+        // 等待同一个日志文件之前的存储关闭完成, 否则剩余的修改可能在恢复之后才追加到日志
+        CompletableFuture<Void> closeFuture = CLOSING_MAP.get(path);
+        if(closeFuture == null)
+            return;
+        try {
+            closeFuture.get(5L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MoonLakeException("The store '" + path + "' wait close interrupted.", e);
+        } catch (Exception e) {
+            throw new MoonLakeException("The store '" + path + "' wait close exception.", e);
+        }
+    }
+
+    private void open() throws IOException {
+        // 打开日志文件并映射到内存, 文件容量不足时按两倍扩展
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, Math.max(channel.size(), INITIAL_CAPACITY));
+    }
+
+    private void recover(boolean load) {
+        // 从头重放日志, 遇到长度为 0 或者 CRC 不匹配 (崩溃时未写完) 的记录则停止
+        // load 为 true 则同时加载键值到内存, 否则只重建日志的大小统计
+        int position = 0;
+        int capacity = buffer.capacity();
+        CRC32 crc = new CRC32();
+
+        while(position + HEADER <= capacity) {
+            int length = buffer.getInt(position);
+            if(length < 5 || position + HEADER + length > capacity)
+                break;
+            byte[] payload = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(position + HEADER);
+            view.get(payload);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if((int) crc.getValue() != buffer.getInt(position + 4))
+                break;
+            apply(payload, HEADER + length, load);
+            position += HEADER + length;
+        }
+        end = position;
+        if(end < capacity && buffer.getInt(end) != 0) {
+            // 清除末尾不完整的记录, 避免之后追加的记录之后残留旧的数据
+            logger.warning("The script '" + name + "' store log truncated at " + end + " bytes.");
+            for(int i = end; i < capacity; i++)
+                buffer.put(i, (byte) 0);
+            buffer.force();
+        }
+    }
+
+    private void apply(byte[] payload, int size, boolean load) {
+        ByteBuffer view = ByteBuffer.wrap(payload);
+        byte operation = view.get();
+        int keyLength = view.getInt();
+        String key = new String(payload, 5, keyLength, StandardCharsets.UTF_8);
+        Integer old;
+        if(operation == PUT) {
+            if(load)
+                valueMap.put(key, new String(payload, 5 + keyLength, payload.length - 5 - keyLength, StandardCharsets.UTF_8));
+            old = sizeMap.put(key, size);
+            liveBytes += size;
+        } else {
+            if(load)
+                valueMap.remove(key);
+            old = sizeMap.remove(key);
+        }
+        if(old != null)
+            liveBytes -= old;
+    }
+
+    private void write(Map<String, String> batch) throws IOException {
+        // 追加一批记录, 写入后强制刷新到磁盘
+        CRC32 crc = new CRC32();
+        for(Map.Entry<String, String> entry : batch.entrySet()) {
+            ByteBuffer record = encode(crc, entry.getKey(), entry.getValue());
+            int size = record.remaining();
+            ensureCapacity(size);
+            // 先写入内容再写入长度, 长度非 0 时记录才有效
+            ByteBuffer view = buffer.duplicate();
+            view.position(end + 4);
+            record.position(4);
+            view.put(record);
+            buffer.putInt(end, size - HEADER);
+            Integer old = entry.getValue() != null ? sizeMap.put(entry.getKey(), size) : sizeMap.remove(entry.getKey());
+            if(entry.getValue() != null)
+                liveBytes += size;
+            if(old != null)
+                liveBytes -= old;
+            end += size;
+        }
+        buffer.force();
+    }
+
+    private static ByteBuffer encode(CRC32 crc, String key, String value) {
+        // 编码一条完整的记录, 值为 null 则为移除记录
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int length = 5 + keyBytes.length + valueBytes.length;
+        ByteBuffer record = ByteBuffer.allocate(HEADER + length);
+        record.putInt(length).putInt(0).put(value != null ? PUT : REMOVE).putInt(keyBytes.length).put(keyBytes).put(valueBytes);
+        crc.reset();
+        crc.update(record.array(), HEADER, length);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private void ensureCapacity(int size) throws IOException {
+        // 容量不足则扩展文件并重新映射
+        if(end + size + HEADER <= buffer.capacity())
+            return;
+        long capacity = buffer.capacity();
+        // 保留末尾的 HEADER 字节作为长度为 0 的结束标记
+        while(end + size + HEADER > capacity)
+            capacity *= 2L;
+        Validate.isTrue(capacity <= Integer.MAX_VALUE, "The script '" + name + "' store log too large.");
+        buffer.force();
+        unmap(buffer);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, capacity);
+    }
+
+    private void compact() throws IOException {
+        // 只写入存活的键值到新文件, 强制刷新后原子替换旧的日志文件
+        // 替换之前崩溃则旧的日志文件仍然完整, 残留的压缩文件会在下次压缩时覆盖
+        Path compactPath = path.resolveSibling(path.getFileName() + ".compact");
+        int before = end;
+        CRC32 crc = new CRC32();
+        try (FileChannel compactChannel = FileChannel.open(compactPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for(Map.Entry<String, String> entry : valueMap.entrySet()) {
+                ByteBuffer record = encode(crc, entry.getKey(), entry.getValue());
+                while(record.hasRemaining())
+                    compactChannel.write(record);
+            }
+            compactChannel.force(true);
+        }
+        release();
+        try {
+            Files.move(compactPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // 替换失败 (例如旧的日志仍然被映射) 则保留旧的日志, 之后的写入继续追加到旧的日志
+            Files.deleteIfExists(compactPath);
+            throw e;
+        } finally {
+            // 无论替换是否成功都重新打开日志
+            reopen();
+        }
+        logger.info("The script '" + name + "' store compacted " + before + " -> " + end + " bytes.");
+    }
+
+    private void reopen() throws IOException {
+        // 重新打开日志: 内存中的键值可能已经比日志更新, 只重建日志的统计
+        sizeMap.clear();
+        liveBytes = 0L;
+        open();
+        recover(false);
+    }
+
+    private void release() {
+        // 解除内存映射并关闭文件
+        try {
+            if(buffer != null) {
+                buffer.force();
+                unmap(buffer);
+            }
+            if(channel != null)
+                channel.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "The script '" + name + "' store release exception", e);
+        }
+        buffer = null;
+        channel = null;
+    }
+
+    private void unmap(MappedByteBuffer buffer) {
+        // 立即解除内存映射, 否则文件在映射被回收之前无法在部分系统上替换或删除
+        try {
+            if(INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                return;
+            }
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if(cleaner != null) {
+                Method cleanMethod = cleaner.getClass().getMethod("clean");
+                cleanMethod.setAccessible(true);
+                cleanMethod.invoke(cleaner);
+            }
+        } catch (Exception e) {
+            // 无法解除则等待映射被回收, 在此之前部分系统上无法替换日志文件
+            logger.log(Level.WARNING, "The script '" + name + "' store unmap exception", e);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.api;
+
+import com.minecraft.moonlake.exception.MoonLakeException;
+import com.minecraft.moonlake.script.execute.Executor;
+import com.minecraft.moonlake.script.listener.EventDispatcher;
+import com.minecraft.moonlake.script.listener.EventListener;
+import com.minecraft.moonlake.script.listener.EventMapping;
+import com.minecraft.moonlake.validate.Validate;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+final class MoonLakeScriptStub implements Executor<MoonLakeScriptStub> {
+
+    private final MoonLakeScriptLoader loader;
+    private final File file;
+    private final String name;
+    private final List<String> eventList;
+    private final long idleTicks;
+    private final long size;
+    private final String digest;
+    private final List<Trigger> triggerList = new ArrayList<>();
+    // 是否为休眠状态: 触发器已注册, 脚本尚未加载
+    private volatile boolean dormant;
+    // 异步事件提交到主线程的加载任务, 同一个事件的所有通道以及其他异步线程共用
+    private Future<MoonLakeScript> activation;
+
+    MoonLakeScriptStub(MoonLakeScriptLoader loader, File file, String name, List<String> eventList, long idleTicks, long size, String digest) {
+        this.loader = loader;
+        this.file = file;
+        this.name = name;
+        this.eventList = eventList;
+        this.idleTicks = idleTicks;
+        this.size = size;
+        this.digest = digest;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getEvents() {
+        return eventList;
+    }
+
+    public long getIdleTicks() {
+        return idleTicks;
+    }
+
+    public boolean isDormant() {
+        return dormant;
+    }
+
+    public boolean matches(MoonLakeScriptStub stub) {
+        // 文件大小以及内容摘要一致则表示脚本未修改
+        return size == stub.size && digest.equals(stub.digest);
+    }
+
+    public void register() {
+        // 为声明的每个事件注册触发器, 由主线程调用
+        if(dormant)
+            return;
+        List<Class<? extends Event>> eventClassList = new ArrayList<>(eventList.size());
+        for(String event : eventList) {
+            // 先验证所有声明的事件, 不会注册一部分触发器
+            Validate.isTrue(EventMapping.INSTANCE.initialized(event), "The script declared event '" + event + "' not mapping or not exists.");
+            eventClassList.add(EventMapping.INSTANCE.getEventClass(event));
+        }
+        // 每个事件在所有的 (优先度, 忽略已阻止) 通道都注册一个触发器:
+        // 脚本加载后注册的监听器会加入这些已经存在的通道, 本次分发中之后执行的通道会读取到它们
+        EventDispatcher dispatcher = loader.getMain().getEventDispatcher();
+        for(Class<? extends Event> event : eventClassList) {
+            for(EventPriority priority : EventPriority.values()) {
+                for(boolean ignoreCancelled : new boolean[] { false, true }) {
+                    Trigger trigger = new Trigger(event);
+                    triggerList.add(trigger);
+                    dispatcher.register(trigger, priority, ignoreCancelled);
+                }
+            }
+        }
+        synchronized (this) {
+            activation = null;
+        }
+        dormant = true;
+    }
+
+    public void unregister() {
+        // 卸载所有触发器, 由主线程调用
+        dormant = false;
+        synchronized (this) {
+            activation = null;
+        }
+        if(triggerList.isEmpty())
+            return;
+        loader.getMain().getEventDispatcher().unregisterAll(triggerList);
+        triggerList.clear();
+    }
+
+    private void trigger(Listener channel, Event event) throws Exception {
+        // 第一次触发声明的事件: 在主线程加载脚本, 然后将本次事件交给脚本在当前通道注册的监听器
+        if(!dormant)
+            // 已经激活则通道执行时读取的数组已经包含脚本的监听器
+            return;
+        MoonLakeScript script;
+        if(loader.getMain().getServer().isPrimaryThread()) {
+            script = loader.activateScript(this);
+        } else {
+            // 异步事件则等待主线程加载完成, 最多等待配置的时间
+            // 主线程繁忙或者正在等待此线程时不会无限阻塞, 超时则放弃本次事件, 脚本仍然会在主线程继续加载
+            Future<MoonLakeScript> future;
+            boolean submitted = false;
+            synchronized (this) {
+                if(activation == null) {
+                    activation = loader.getMain().getServer().getScheduler().callSyncMethod(loader.getMain(), () -> loader.activateScript(this));
+                    submitted = true;
+                }
+                future = activation;
+            }
+            if(!submitted && !future.isDone())
+                // 加载任务已经提交并且有线程等待过, 其他通道不再重复阻塞
+                return;
+            try {
+                script = future.get(loader.getActivateTimeout(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                synchronized (this) {
+                    // 加载失败则下一次触发重新提交
+                    if(activation == future)
+                        activation = null;
+                }
+                throw new MoonLakeException("The activate script '" + name + "' exception.", e.getCause());
+            } catch (TimeoutException e) {
+                loader.getMain().getLogger().warning("The activate script '" + name + "' timed out after " + loader.getActivateTimeout() + "ms, the event " + event.getEventName() + " not forwarded.");
+                return;
+            }
+        }
+        if(script != null)
+            loader.getMain().getEventDispatcher().forward(channel, script.getListeners(), event);
+    }
+
+    @Override
+    public Object execute(Object... argument) throws Exception {
+        // 执行器: 加载脚本, 返回已加载的脚本
+        return loader.activateScript(this);
+    }
+
+    @Override
+    public int compareTo(MoonLakeScriptStub o) {
+        return name.compareTo(o.name);
+    }
+
+    @Override
+    public String toString() {
+        return "MoonLakeScriptStub{" +
+                "name='" + name + '\'' +
+                ", events=" + eventList +
+                '}';
+    }
+
+    private final class Trigger extends EventListener<MoonLakeScriptStub> {
+
+        private Trigger(Class<? extends Event> event) {
+            super(MoonLakeScriptStub.this, event);
+        }
+
+        @Override
+        public void dispatch(Listener listener, Event event) throws EventException {
+            try {
+                trigger(listener, event);
+            } catch (Exception e) {
+                throw new EventException(e);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            // 同一个事件在每个通道都有独立的触发器
+            return this == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+public final class MoonLakeScriptWatcher implements Runnable {
+
+    private final MoonLakeScriptLoader loader;
+    private final Path root;
+    private final long debounce;
+    private WatchService watchService;
+    private volatile Thread thread;
+
+    public MoonLakeScriptWatcher(MoonLakeScriptLoader loader, long debounce) {
+        this.loader = loader;
+        this.root = loader.getScriptDir().toPath();
+        this.debounce = debounce;
+    }
+
+    public void start() throws IOException {
+        // 启动脚本目录监视线程
+        if(thread != null)
+            return;
+        watchService = root.getFileSystem().newWatchService();
+        registerAll(root);
+        thread = new Thread(this, "MoonLakeScript-Watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void shutdown() {
+        // 关闭脚本目录监视线程
+        thread = null;
+        try {
+            if(watchService != null)
+                watchService.close();
+        } catch (IOException e) {
+        }
+    }
+
+    private void registerAll(Path start) throws IOException {
+        // 递归监视目录以及所有子目录
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        Set<File> pending = new LinkedHashSet<>();
+        while(thread == Thread.currentThread()) {
+            try {
+                // 没有待处理的变化则阻塞等待, 否则等待防抖时间内的下一个变化
+                WatchKey key = pending.isEmpty() ? watchService.take() : watchService.poll(debounce, TimeUnit.MILLISECONDS);
+                if(key == null) {
+                    // 防抖时间内没有新的变化则交给主线程重新加载
+                    flush(pending);
+                    pending = new LinkedHashSet<>();
+                    continue;
+                }
+                Path dir = (Path) key.watchable();
+                for(WatchEvent<?> event : key.pollEvents()) {
+                    if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // 事件溢出则检查整个脚本目录
+                        pending.add(root.toFile());
+                        continue;
+                    }
+                    Path child = dir.resolve((Path) event.context());
+                    if(isIgnored(child))
+                        continue;
+                    if(event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child))
+                        registerAll(child);
+                    pending.add(child.toFile());
+                }
+                key.reset();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            } catch (Exception e) {
+                loader.getMain().getLogger().log(Level.WARNING, "The script watcher exception", e);
+            }
+        }
+    }
+
+    private void flush(Set<File> pending) {
+        // 在主线程增量重新加载发生变化的脚本
+        loader.getMain().getServer().getScheduler().runTask(loader.getMain(), () -> loader.reloadScript(pending));
+    }
+
+    private static boolean isIgnored(Path path) {
+        // 忽略编辑器产生的隐藏文件, 备份文件以及临时文件
+        String name = path.getFileName().toString();
+        return name.startsWith(".") || name.endsWith("~") || name.endsWith(".swp") || name.endsWith(".tmp");
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.api;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+final class SerialExecutor implements Executor {
+
+    private final Executor pool;
+    private final Queue<Runnable> queue = new ArrayDeque<>();
+    private boolean running;
+
+    SerialExecutor(Executor pool) {
+        // 在共享线程池上按提交顺序执行, 同时最多占用一个线程
+        this.pool = pool;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        synchronized (queue) {
+            queue.offer(command);
+            if(running)
+                return;
+            running = true;
+        }
+        pool.execute(this::drain);
+    }
+
+    private void drain() {
+        while(true) {
+            Runnable command;
+            synchronized (queue) {
+                command = queue.poll();
+                if(command == null) {
+                    running = false;
+                    return;
+                }
+            }
+            command.run();
+        }
+    }
+}
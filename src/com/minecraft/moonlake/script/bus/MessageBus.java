@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.bus;
+
+import com.minecraft.moonlake.validate.Validate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+public final class MessageBus {
+
+    private final static Subscription[] EMPTY = new Subscription[0];
+    private final static int MAX_ROUTE = 1024;
+
+    private final Logger logger;
+    private final int batch;
+    // 主线程订阅与异步订阅各自的环形缓冲区, 消息只进入有匹配订阅的缓冲区
+    private final MessageRing mainRing;
+    private final MessageRing asyncRing;
+    private final List<Subscription> subscriptionList = new CopyOnWriteArrayList<>();
+    // 路由缓存: 主题 -> 匹配的订阅, 订阅变化后版本号在同步块中递增, 旧版本的路由在下一次发布时重新计算
+    private final Map<String, Route> routeMap = new ConcurrentHashMap<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long version;
+    private volatile Thread consumer;
+    private volatile boolean waiting;
+    private volatile boolean closed;
+
+    public MessageBus(Logger logger, int capacity, int batch) {
+        // 脚本之间的消息总线: 发布不加锁也不分配节点, 主线程订阅每 tick 批量交付, 异步订阅由消费线程交付
+        Validate.isTrue(batch > 0, "The message bus batch must be greater than 0.");
+        this.logger = logger;
+        this.batch = batch;
+        this.mainRing = new MessageRing(capacity);
+        this.asyncRing = new MessageRing(capacity);
+    }
+
+    public synchronized void subscribe(Subscription subscription) {
+        Validate.isTrue(!closed, "The message bus already closed.");
+        subscriptionList.add(subscription);
+        version++;
+        if(subscription.isAsync())
+            startConsumer();
+    }
+
+    public synchronized void unsubscribe(Collection<Subscription> subscriptions) {
+        // 批量取消订阅, 已经进入缓冲区的消息不会再交付给这些订阅
+        if(subscriptions.isEmpty())
+            return;
+        subscriptions.forEach(Subscription::cancel);
+        subscriptionList.removeAll(subscriptions);
+        version++;
+    }
+
+    public boolean publish(String topic, Object message) {
+        // 发布消息, 没有订阅则直接丢弃, 缓冲区已满则返回 false
+        Validate.isTrue(!closed, "The message bus already closed.");
+        Route route = route(topic);
+        boolean published = true;
+        if(route.main.length > 0 && !offer(mainRing, topic, message, route.main))
+            published = false;
+        if(route.async.length > 0) {
+            if(!offer(asyncRing, topic, message, route.async))
+                published = false;
+            else if(waiting)
+                LockSupport.unpark(consumer);
+        }
+        return published;
+    }
+
+    private boolean offer(MessageRing ring, String topic, Object message, Subscription[] target) {
+        if(ring.offer(topic, message, target))
+            return true;
+        long count = dropped.incrementAndGet();
+        if(count == 1L || count % 1000L == 0L)
+            logger.warning("The message bus ring is full, " + count + " messages dropped.");
+        return false;
+    }
+
+    private Route route(String topic) {
+        // 发布路径只有一次哈希查找, 缓存未命中或者已过期才遍历订阅
+        Route route = routeMap.get(topic);
+        if(route != null && route.version == version)
+            return route;
+        long version = this.version;
+        String[] segments = split(topic);
+        for(String segment : segments)
+            Validate.isTrue(!segment.equals("*") && !segment.equals("#"), "The publish topic '" + topic + "' can't contain wildcards.");
+        List<Subscription> mainList = new ArrayList<>();
+        List<Subscription> asyncList = new ArrayList<>();
+        for(Subscription subscription : subscriptionList)
+            if(subscription.matches(segments))
+                (subscription.isAsync() ? asyncList : mainList).add(subscription);
+        route = new Route(version,
+                mainList.isEmpty() ? EMPTY : mainList.toArray(new Subscription[mainList.size()]),
+                asyncList.isEmpty() ? EMPTY : asyncList.toArray(new Subscription[asyncList.size()]));
+        if(routeMap.size() >= MAX_ROUTE)
+            routeMap.clear();
+        routeMap.put(topic, route);
+        return route;
+    }
+
+    public int drain() {
+        // 由主线程每 tick 调用, 最多交付 batch 条消息, 剩余的消息下一个 tick 交付
+        return mainRing.drain(this::deliver, batch);
+    }
+
+    private void deliver(String topic, Object message, Subscription[] target) {
+        for(int i = 0; i < target.length; i++)
+            target[i].deliver(topic, message);
+    }
+
+    private synchronized void startConsumer() {
+        // 第一个异步订阅时才启动消费线程
+        if(consumer != null || closed)
+            return;
+        Thread thread = new Thread(this::consume, "MoonLakeScript-Bus");
+        thread.setDaemon(true);
+        consumer = thread;
+        thread.start();
+    }
+
+    private void consume() {
+        while(!closed) {
+            if(asyncRing.drain(this::deliver, batch) > 0)
+                continue;
+            // 设置等待标记后再次检查, 发布线程看到标记才会唤醒, 超时只作为保险
+            waiting = true;
+            if(asyncRing.isEmpty() && !closed)
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100L));
+            waiting = false;
+        }
+    }
+
+    public int getSubscriptionCount() {
+        return subscriptionList.size();
+    }
+
+    public int getPendingCount() {
+        return mainRing.size() + asyncRing.size();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public void shutdown() {
+        // 插件关闭: 停止消费线程, 剩余的消息直接丢弃
+        closed = true;
+        unsubscribe(new ArrayList<>(subscriptionList));
+        Thread consumer = this.consumer;
+        if(consumer != null) {
+            LockSupport.unpark(consumer);
+            try {
+                consumer.join(1000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        routeMap.clear();
+    }
+
+    static String[] split(String topic) {
+        // 主题以 . 分隔, 不允许空的段
+        Validate.notNull(topic, "The message topic object is null.");
+        String[] segments = topic.split("\\.", -1);
+        for(String segment : segments)
+            Validate.isTrue(!segment.isEmpty(), "The message topic '" + topic + "' contains empty segment.");
+        return segments;
+    }
+
+    private final static class Route {
+
+        private final long version;
+        private final Subscription[] main;
+        private final Subscription[] async;
+
+        private Route(long version, Subscription[] main, Subscription[] async) {
+            this.version = version;
+            this.main = main;
+            this.async = async;
+        }
+    }
+}
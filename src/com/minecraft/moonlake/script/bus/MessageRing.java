@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.bus;
+
+import com.minecraft.moonlake.validate.Validate;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public final class MessageRing {
+
+    private final int capacity;
+    private final int mask;
+    // 每个槽位的序号: 等于写入位置则可写, 等于写入位置 + 1 则可读, 读取后加上容量进入下一轮
+    private final AtomicLongArray sequences;
+    // 预分配的槽位数据, 发布与消费不会分配任何节点
+    private final String[] topics;
+    private final Object[] messages;
+    private final Subscription[][] targets;
+    private final AtomicLong tail = new AtomicLong();
+    // 读取位置, 只由唯一的消费线程写入
+    private volatile long head;
+
+    public MessageRing(int capacity) {
+        // 有界的多生产者单消费者环形缓冲区, 容量向上取整为 2 的幂
+        Validate.isTrue(capacity > 0 && capacity <= 1 << 30, "The message ring capacity must be between 1 and 2^30.");
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.sequences = new AtomicLongArray(this.capacity);
+        this.topics = new String[this.capacity];
+        this.messages = new Object[this.capacity];
+        this.targets = new Subscription[this.capacity][];
+        for(int i = 0; i < this.capacity; i++)
+            sequences.set(i, i);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        // 近似的消息数量
+        long size = tail.get() - head;
+        return size < 0L ? 0 : (int) Math.min(size, capacity);
+    }
+
+    public boolean isEmpty() {
+        // 只由消费线程调用: 下一个读取的槽位是否尚未发布
+        long position = head;
+        return sequences.get((int) position & mask) != position + 1L;
+    }
+
+    public boolean offer(String topic, Object message, Subscription[] target) {
+        // 发布消息: 通过 CAS 占用槽位, 写入数据后发布序号, 已满则返回 false
+        long position;
+        int index;
+        while(true) {
+            position = tail.get();
+            index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if(difference == 0L) {
+                if(tail.compareAndSet(position, position + 1L))
+                    break;
+            } else if(difference < 0L) {
+                // 槽位仍未被消费, 缓冲区已满
+                return false;
+            }
+            // 其他生产者已经占用此位置, 重新读取
+        }
+        topics[index] = topic;
+        messages[index] = message;
+        targets[index] = target;
+        // 使用 volatile 写入发布, 与消费线程的等待标记构成完整的内存屏障
+        sequences.set(index, position + 1L);
+        return true;
+    }
+
+    public int drain(Consumer consumer, int max) {
+        // 批量消费最多 max 条消息, 只能由唯一的消费线程调用
+        long position = head;
+        int count = 0;
+        while(count < max) {
+            int index = (int) position & mask;
+            if(sequences.get(index) != position + 1L)
+                break;
+            String topic = topics[index];
+            Object message = messages[index];
+            Subscription[] target = targets[index];
+            // 先释放槽位的引用再交给生产者复用, 避免缓冲区持有已卸载脚本的消息
+            topics[index] = null;
+            messages[index] = null;
+            targets[index] = null;
+            sequences.lazySet(index, position + capacity);
+            position++;
+            count++;
+            consumer.accept(topic, message, target);
+        }
+        if(count > 0)
+            head = position;
+        return count;
+    }
+
+    @FunctionalInterface
+    public interface Consumer {
+
+        void accept(String topic, Object message, Subscription[] target);
+    }
+}
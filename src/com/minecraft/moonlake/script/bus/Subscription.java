@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.bus;
+
+import com.minecraft.moonlake.script.execute.Executor;
+import com.minecraft.moonlake.script.execute.ScriptBudget;
+import com.minecraft.moonlake.script.execute.ScriptMailbox;
+import com.minecraft.moonlake.validate.Validate;
+
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public final class Subscription implements Executor<Subscription> {
+
+    private final String owner;
+    private final String pattern;
+    private final String[] segments;
+    private final BiConsumer<Object, String> handler;
+    private final boolean async;
+    private final ScriptBudget budget;
+    private final ScriptMailbox mailbox;
+    private final Logger logger;
+    private volatile boolean active = true;
+
+    public Subscription(String owner, String pattern, BiConsumer<Object, String> handler, boolean async, ScriptBudget budget, ScriptMailbox mailbox, Logger logger) {
+        // 消息总线的订阅: 主题模式以 . 分隔, * 匹配一段, # 只能作为最后一段并匹配零或多段
+        Validate.notNull(pattern, "The subscription pattern object is null.");
+        Validate.notNull(handler, "The subscription handler object is null.");
+        this.owner = owner;
+        this.pattern = pattern;
+        this.segments = MessageBus.split(pattern);
+        for(int i = 0; i < segments.length - 1; i++)
+            Validate.isTrue(!segments[i].equals("#"), "The subscription pattern '" + pattern + "' '#' must be the last segment.");
+        this.handler = handler;
+        this.async = async;
+        this.budget = budget;
+        this.mailbox = mailbox;
+        this.logger = logger;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    void cancel() {
+        // 取消后已经进入缓冲区的消息也不会再交付
+        active = false;
+    }
+
+    boolean matches(String[] topic) {
+        return matches(segments, 0, topic, 0);
+    }
+
+    private static boolean matches(String[] pattern, int p, String[] topic, int t) {
+        // 逐段匹配, 只有 # 需要回溯
+        for(; p < pattern.length; p++, t++) {
+            String segment = pattern[p];
+            if(segment.equals("#"))
+                return true;
+            if(t >= topic.length || (!segment.equals("*") && !segment.equals(topic[t])))
+                return false;
+        }
+        return t == topic.length;
+    }
+
+    void deliver(String topic, Object message) {
+        // 交付消息: 主线程消费时与事件处理器一样计入脚本的执行时间预算
+        // 邮箱模式下异步订阅投递到脚本的邮箱, 主线程订阅持有邮箱锁执行
+        if(!active || (budget != null && !budget.acquire()))
+            return;
+        if(mailbox != null) {
+            if(async) {
+                mailbox.post(() -> {
+                    invoke(topic, message);
+                    return null;
+                });
+                return;
+            }
+            synchronized (mailbox.getLock()) {
+                invoke(topic, message);
+            }
+            return;
+        }
+        invoke(topic, message);
+    }
+
+    private void invoke(String topic, Object message) {
+        if(!active)
+            return;
+        long start = budget != null ? budget.enter(this) : 0L;
+        try {
+            // 直接调用处理函数, 不分配参数数组
+            handler.accept(message, topic);
+        } catch (Exception e) {
+            // 单个订阅的异常不影响其他订阅
+            logger.log(Level.SEVERE, "Could not pass message '" + topic + "' to " + this, e);
+        } finally {
+            if(budget != null)
+                budget.exit(start);
+        }
+    }
+
+    @Override
+    public Object execute(Object... argument) throws Exception {
+        // 参数: 消息, 主题
+        handler.accept(argument[0], (String) argument[1]);
+        return null;
+    }
+
+    @Override
+    public int compareTo(Subscription o) {
+        int compareFirst = owner.compareTo(o.owner);
+        if(compareFirst != 0) return compareFirst;
+        return pattern.compareTo(o.pattern);
+    }
+
+    @Override
+    public String toString() {
+        return "Subscription{" +
+                "owner='" + owner + '\'' +
+                ", pattern='" + pattern + '\'' +
+                ", async=" + async +
+                '}';
+    }
+}
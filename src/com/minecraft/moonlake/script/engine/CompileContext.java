@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.engine;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+public final class CompileContext extends SimpleScriptContext {
+
+    // 当前线程正在编译的脚本文件名
+    private final static ThreadLocal<String> FILENAME = new ThreadLocal<>();
+
+    public CompileContext(ScriptEngine engine) {
+        setBindings(engine.getBindings(ScriptContext.ENGINE_SCOPE), ScriptContext.ENGINE_SCOPE);
+        setBindings(engine.getBindings(ScriptContext.GLOBAL_SCOPE), ScriptContext.GLOBAL_SCOPE);
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        // 编译时引擎从默认上下文读取文件名
+        String filename = ScriptEngine.FILENAME.equals(name) ? FILENAME.get() : null;
+        return filename != null ? filename : super.getAttribute(name);
+    }
+
+    public static CompiledScript compile(ScriptEngine engine, String fileName, String source) throws ScriptException {
+        // 编译时的文件名由当前线程指定, 避免并行编译时修改共享引擎的上下文属性
+        FILENAME.set(fileName);
+        try {
+            return ((Compilable) engine).compile(source);
+        } finally {
+            FILENAME.remove();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.engine;
+
+import com.minecraft.moonlake.script.api.MoonLakeScriptListener;
+import com.oracle.truffle.js.scriptengine.GraalJSScriptEngine;
+import org.bukkit.event.Event;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.HostAccess;
+import org.graalvm.polyglot.Value;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+public final class GraalEngineProvider implements ScriptEngineProvider {
+
+    private Engine engine;
+
+    // 脚本数组传入 Java 时转换为 List, 与 Nashorn 一样可以作为集合使用
+    private final static HostAccess HOST_ACCESS = HostAccess.newBuilder(HostAccess.ALL)
+            .targetTypeMapping(Value.class, Object.class, Value::hasArrayElements, value -> value.as(List.class))
+            .build();
+
+    public GraalEngineProvider() throws ClassNotFoundException {
+        // 服务端没有 GraalJS 的类库则此引擎不可用
+        Class.forName("com.oracle.truffle.js.scriptengine.GraalJSScriptEngine");
+    }
+
+    @Override
+    public String getName() {
+        return "graaljs";
+    }
+
+    private synchronized Engine getEngine() {
+        // 所有脚本上下文共享同一个 polyglot 引擎, 解析以及 JIT 编译的代码可以在上下文之间复用
+        // 非 GraalVM 运行时只能解释执行, 关闭解释执行的警告
+        if(engine == null)
+            engine = Engine.newBuilder().option("engine.WarnInterpreterOnly", "false").build();
+        return engine;
+    }
+
+    @Override
+    public ScriptEngine createEngine(ClassLoader classLoader) {
+        // 开启 Nashorn 兼容模式, 脚本可以与 Nashorn 一样访问 Java 类以及 Bean 属性
+        ScriptEngine scriptEngine = GraalJSScriptEngine.create(getEngine(), Context.newBuilder("js")
+                .allowAllAccess(true)
+                .allowHostAccess(HOST_ACCESS)
+                .allowExperimentalOptions(true)
+                .option("js.nashorn-compat", "true")
+                .hostClassLoader(classLoader));
+        scriptEngine.setContext(new CompileContext(scriptEngine));
+        return scriptEngine;
+    }
+
+    @Override
+    public CompiledScript compile(ScriptEngine engine, String fileName, String source) throws ScriptException {
+        // polyglot 上下文不允许多个线程同时进入, 共享引擎时串行编译
+        synchronized (engine) {
+            return CompileContext.compile(engine, fileName, source);
+        }
+    }
+
+    @Override
+    public boolean isFunction(Object value) {
+        // 脚本函数转换到 Java 后为实现了 Function 接口的代理对象
+        return value instanceof Function;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object call(Object function, Object... argument) throws Exception {
+        return ((Function<Object[], Object>) function).apply(argument);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public MoonLakeScriptListener toListener(Object function) {
+        if(!isFunction(function))
+            return null;
+        return new FunctionListener((Function<Object[], Object>) function);
+    }
+
+    @Override
+    public Object invoke(Invocable script, Object instance, String method, Object... argument) throws Exception {
+        // 直接在脚本对象所属的上下文调用成员函数, 共享引擎时默认上下文并不是脚本的上下文
+        Value target = Value.asValue(instance);
+        if(!target.canInvokeMember(method))
+            return script.invokeMethod(instance, method, argument);
+        return target.invokeMember(method, argument).as(Object.class);
+    }
+
+    @Override
+    public MoonLakeScriptListener toListener(Object instance, String method) {
+        // 获取脚本对象对应的 polyglot 值, 调用成员函数时 this 为脚本对象
+        Value target = Value.asValue(instance);
+        if(!target.canInvokeMember(method))
+            return null;
+        return event -> target.invokeMember(method, event);
+    }
+
+    @Override
+    public void release(ScriptContext context) {
+        // 每个引擎域的绑定对象都拥有独立的 polyglot 上下文, 卸载后关闭
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        if(bindings instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) bindings).close();
+            } catch (Exception e) {
+                // 上下文正在执行或已经关闭则忽略
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        // 关闭 polyglot 引擎以及仍然打开的上下文, 插件重新启用时会重新创建
+        if(engine != null) {
+            engine.close();
+            engine = null;
+        }
+    }
+
+    private final static class FunctionListener implements MoonLakeScriptListener {
+
+        private final Function<Object[], Object> target;
+        // 复用的参数数组, 调用时取出并在返回后归还, 重入或其他线程同时调用时取不到则临时创建
+        private final AtomicReference<Object[]> argument = new AtomicReference<>(new Object[1]);
+
+        private FunctionListener(Function<Object[], Object> target) {
+            this.target = target;
+        }
+
+        @Override
+        public void handler(Event event) {
+            Object[] argument = this.argument.getAndSet(null);
+            if(argument == null)
+                argument = new Object[1];
+            argument[0] = event;
+            try {
+                target.apply(argument);
+            } finally {
+                argument[0] = null;
+                this.argument.lazySet(argument);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.engine;
+
+import com.minecraft.moonlake.script.api.MoonLakeScriptListener;
+import jdk.nashorn.api.scripting.JSObject;
+import jdk.nashorn.api.scripting.NashornScriptEngineFactory;
+import jdk.nashorn.api.scripting.ScriptObjectMirror;
+
+import javax.script.ScriptEngine;
+
+public final class NashornEngineProvider implements ScriptEngineProvider {
+
+    public NashornEngineProvider() {
+    }
+
+    @Override
+    public String getName() {
+        return "nashorn";
+    }
+
+    @Override
+    public ScriptEngine createEngine(ClassLoader classLoader) {
+        // 创建不使用持久化代码缓存的 Nashorn 脚本引擎
+        return createEngine(classLoader, new String[0]);
+    }
+
+    @Override
+    public ScriptEngine createEngine(ClassLoader classLoader, boolean persistentCache) {
+        // 开启持久化代码缓存则未修改的脚本重启后无需再次解析编译
+        // Nashorn 没有指定缓存目录的引擎参数, 缓存目录由 JVM 参数 -Dnashorn.persistent.code.cache 指定
+        // 未指定则为服务端工作目录下的 nashorn_code_cache, 这里不会修改任何系统属性
+        return createEngine(classLoader, persistentCache ? new String[] { "--persistent-code-cache" } : new String[0]);
+    }
+
+    private static ScriptEngine createEngine(ClassLoader classLoader, String[] options) {
+        ScriptEngine engine = new NashornScriptEngineFactory().getScriptEngine(options, classLoader);
+        engine.setContext(new CompileContext(engine));
+        return engine;
+    }
+
+    @Override
+    public boolean isFunction(Object value) {
+        return value instanceof JSObject && ((JSObject) value).isFunction();
+    }
+
+    @Override
+    public boolean isArray(Object value) {
+        // Nashorn 的数组转换到 Java 后为以索引为键的 ScriptObjectMirror
+        return value instanceof JSObject && ((JSObject) value).isArray();
+    }
+
+    @Override
+    public Object call(Object function, Object... argument) throws Exception {
+        return ((JSObject) function).call(null, argument);
+    }
+
+    @Override
+    public MoonLakeScriptListener toListener(Object function) {
+        // 将函数转换为接口的实现, 之后的调用无需再按名称查找函数
+        if(function instanceof ScriptObjectMirror && ((ScriptObjectMirror) function).isFunction())
+            return ((ScriptObjectMirror) function).to(MoonLakeScriptListener.class);
+        return null;
+    }
+
+    @Override
+    public MoonLakeScriptListener toListener(Object instance, String method) {
+        // 将对象的成员函数绑定 this 后转换为接口的实现
+        if(instance instanceof ScriptObjectMirror) {
+            Object target = ((ScriptObjectMirror) instance).getMember(method);
+            if(target instanceof ScriptObjectMirror && ((ScriptObjectMirror) target).isFunction()) {
+                Object bound = ((ScriptObjectMirror) target).callMember("bind", instance);
+                return ((ScriptObjectMirror) bound).to(MoonLakeScriptListener.class);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.engine;
+
+import com.minecraft.moonlake.script.api.MoonLakeScriptListener;
+
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+public interface ScriptEngineProvider {
+
+    // 引擎名称, 用于配置文件以及脚本头部的 @engine 指令
+    String getName();
+
+    // 创建新的脚本引擎, 引擎的默认上下文必须为 CompileContext 以便并行编译时指定文件名
+    ScriptEngine createEngine(ClassLoader classLoader);
+
+    default ScriptEngine createEngine(ClassLoader classLoader, boolean persistentCache) {
+        // 创建脚本引擎, persistentCache 为 true 则开启引擎的持久化代码缓存, 不支持的引擎忽略此参数
+        return createEngine(classLoader);
+    }
+
+    default ScriptContext createContext(ScriptEngine engine) {
+        // 创建新的脚本上下文对象, 引擎域将拥有全新的全局对象
+        ScriptContext context = new SimpleScriptContext();
+        Bindings bindings = engine.createBindings();
+        context.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+        context.setBindings(engine.getBindings(ScriptContext.GLOBAL_SCOPE), ScriptContext.GLOBAL_SCOPE);
+        return context;
+    }
+
+    default CompiledScript compile(ScriptEngine engine, String fileName, String source) throws ScriptException {
+        // 在编译线程中编译脚本源码
+        return CompileContext.compile(engine, fileName, source);
+    }
+
+    // 获取指定的脚本对象是否为函数
+    boolean isFunction(Object value);
+
+    default boolean isArray(Object value) {
+        // 获取指定的脚本对象是否为以 Map 表示的数组, 默认数组已经转换为 List
+        return false;
+    }
+
+    default Object export(Object value) {
+        // 将脚本的值复制为不依赖引擎的只读 Java 值, 用于在脚本之间传递, 函数无法复制
+        return ScriptValues.export(this, value, 0);
+    }
+
+    // 调用脚本函数, this 为 undefined
+    Object call(Object function, Object... argument) throws Exception;
+
+    default Object invoke(Invocable script, Object instance, String method, Object... argument) throws Exception {
+        // 调用脚本对象的成员函数, this 为脚本对象
+        return script.invokeMethod(instance, method, argument);
+    }
+
+    // 将脚本函数解析为可直接调用的句柄, 不是函数则返回 null
+    MoonLakeScriptListener toListener(Object function);
+
+    // 将脚本对象的成员函数绑定 this 后解析为可直接调用的句柄, 不支持则返回 null 由 invoke 调用
+    MoonLakeScriptListener toListener(Object instance, String method);
+
+    default void release(ScriptContext context) {
+        // 脚本卸载后释放上下文占用的资源
+    }
+
+    default void close() {
+        // 插件关闭时释放引擎占用的资源
+    }
+}
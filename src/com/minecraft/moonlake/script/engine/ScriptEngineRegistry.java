@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.engine;
+
+import com.minecraft.moonlake.exception.MoonLakeException;
+import com.minecraft.moonlake.validate.Validate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+public final class ScriptEngineRegistry {
+
+    private final Map<String, ScriptEngineProvider> providerMap = new LinkedHashMap<>();
+
+    // 内置的引擎提供者类名, 运行时缺少类库的引擎将不可用
+    private final static String[] BUILTIN_PROVIDERS = {
+            "com.minecraft.moonlake.script.engine.NashornEngineProvider",
+            "com.minecraft.moonlake.script.engine.GraalEngineProvider"
+    };
+
+    // 静态实例
+    public final static ScriptEngineRegistry INSTANCE = new ScriptEngineRegistry();
+
+    private ScriptEngineRegistry() {
+        for(String className : BUILTIN_PROVIDERS) {
+            try {
+                register(Class.forName(className).asSubclass(ScriptEngineProvider.class).getDeclaredConstructor().newInstance());
+            } catch (Exception | LinkageError e) {
+                // 缺少类库 (例如 JDK 15+ 没有 Nashorn) 则跳过
+            }
+        }
+        // 其他插件可以通过 META-INF/services 提供额外的引擎
+        Iterator<ScriptEngineProvider> iterator = ServiceLoader.load(ScriptEngineProvider.class, ScriptEngineProvider.class.getClassLoader()).iterator();
+        while(true) {
+            try {
+                if(!iterator.hasNext())
+                    break;
+                register(iterator.next());
+            } catch (ServiceConfigurationError | LinkageError e) {
+                // 无法加载的引擎提供者则跳过
+            }
+        }
+    }
+
+    public synchronized void register(ScriptEngineProvider provider) {
+        // 注册引擎提供者, 同名则不覆盖
+        Validate.notNull(provider, "The provider object is null.");
+        providerMap.putIfAbsent(provider.getName().toLowerCase(), provider);
+    }
+
+    public synchronized boolean isAvailable(String name) {
+        // 获取指定名称的引擎是否可用
+        return name != null && providerMap.containsKey(name.toLowerCase());
+    }
+
+    public synchronized ScriptEngineProvider getProvider(String name) {
+        // 获取指定名称的引擎提供者
+        Validate.notNull(name, "The name object is null.");
+        ScriptEngineProvider provider = providerMap.get(name.toLowerCase());
+        if(provider == null)
+            throw new MoonLakeException("The script engine '" + name + "' not exists or not available. (available: " + providerMap.keySet() + ")");
+        return provider;
+    }
+
+    public synchronized ScriptEngineProvider getProvider(String name, String fallback) {
+        // 获取指定名称的引擎提供者, 不可用则使用备用引擎, 备用引擎也不可用则使用第一个可用的引擎
+        if(isAvailable(name))
+            return getProvider(name);
+        if(isAvailable(fallback))
+            return getProvider(fallback);
+        if(providerMap.isEmpty())
+            throw new MoonLakeException("The not has any available script engine.");
+        return providerMap.values().iterator().next();
+    }
+
+    public synchronized Collection<ScriptEngineProvider> getProviders() {
+        return Collections.unmodifiableCollection(new ArrayList<>(providerMap.values()));
+    }
+
+    public synchronized void close() {
+        // 释放所有引擎占用的资源
+        providerMap.values().forEach(ScriptEngineProvider::close);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.engine;
+
+import com.minecraft.moonlake.exception.MoonLakeException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+final class ScriptValues {
+
+    private final static int MAX_DEPTH = 32;
+
+    private ScriptValues() {
+    }
+
+    static Object export(ScriptEngineProvider provider, Object value, int depth) {
+        // 深度复制: 对象复制为只读的 Map, 数组复制为只读的 List, 其他 Java 对象直接传递
+        if(value == null || value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Character)
+            return value;
+        if(depth >= MAX_DEPTH)
+            throw new MoonLakeException("The script value nesting too deep, exceeds " + MAX_DEPTH + " levels.");
+        if(provider.isFunction(value))
+            throw new MoonLakeException("The script function can't be exported.");
+        if(provider.isArray(value))
+            return exportList(provider, ((Map<?, ?>) value).values(), depth);
+        if(value instanceof Collection)
+            return exportList(provider, (Collection<?>) value, depth);
+        if(value instanceof Map) {
+            Map<String, Object> copy = new LinkedHashMap<>();
+            for(Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+                copy.put(String.valueOf(entry.getKey()), export(provider, entry.getValue(), depth + 1));
+            return Collections.unmodifiableMap(copy);
+        }
+        return value;
+    }
+
+    private static List<Object> exportList(ScriptEngineProvider provider, Collection<?> values, int depth) {
+        List<Object> copy = new ArrayList<>(values.size());
+        for(Object element : values)
+            copy.add(export(provider, element, depth + 1));
+        return Collections.unmodifiableList(copy);
+    }
+}
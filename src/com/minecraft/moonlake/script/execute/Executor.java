@@ -21,4 +21,9 @@ package com.minecraft.moonlake.script.execute;
 public interface Executor<T> extends Comparable<T> {
 
     Object execute(Object... argument) throws Exception;
+
+    default Object execute(Object argument) throws Exception {
+        // 单参数执行, 实现类可以覆盖此函数来避免分配参数数组
+        return execute(new Object[] { argument });
+    }
 }
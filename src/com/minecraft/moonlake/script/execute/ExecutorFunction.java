@@ -18,35 +18,79 @@
 
 package com.minecraft.moonlake.script.execute;
 
+import com.minecraft.moonlake.script.api.MoonLakeScriptListener;
+import com.minecraft.moonlake.script.engine.ScriptEngineProvider;
+import org.bukkit.event.Event;
+
+import javax.script.Bindings;
 import javax.script.Invocable;
 
 public class ExecutorFunction implements Executor<ExecutorFunction> {
 
+    private final ScriptEngineProvider provider;
     private final Invocable script;
+    private final Bindings scope;
     private final String function;
+    private volatile MoonLakeScriptListener handle;
 
-    public ExecutorFunction(Invocable script, String function) {
+    public ExecutorFunction(ScriptEngineProvider provider, Invocable script, Bindings scope, String function) {
+        this.provider = provider;
         this.script = script;
+        this.scope = scope;
         this.function = function;
     }
 
+    public ScriptEngineProvider getProvider() {
+        return provider;
+    }
+
     public Invocable getScript() {
         return script;
     }
 
+    public Bindings getScope() {
+        return scope;
+    }
+
     public String getFunction() {
         return function;
     }
 
+    public MoonLakeScriptListener resolve() {
+        // 将函数解析为可直接调用的句柄, 之后的单参数调用无需再按名称查找函数
+        return this.handle = provider.toListener(scope.get(function));
+    }
+
+    @Override
+    public Object execute(Object argument) throws Exception {
+        // 单参数的事件调用: 使用已解析的句柄, 不分配参数数组
+        MoonLakeScriptListener handle = this.handle;
+        if(handle == null)
+            handle = resolve();
+        if(handle != null && argument instanceof Event) {
+            handle.handler((Event) argument);
+            return null;
+        }
+        return execute(new Object[] { argument });
+    }
+
     @Override
     public Object execute(Object... argument) throws Exception {
+        // 从脚本自身的作用域获取函数, 共享引擎时默认上下文并不是脚本的上下文
+        Object target = scope.get(function);
+        if(provider.isFunction(target))
+            return provider.call(target, argument);
         return script.invokeFunction(function, argument);
     }
 
     @Override
     public int compareTo(ExecutorFunction o) {
-        int compareFirst = script.hashCode() - o.script.hashCode();
+        int compareFirst = Integer.compare(script.hashCode(), o.script.hashCode());
         if(compareFirst != 0) return compareFirst;
+
+        // 共享引擎时多个脚本的引擎相同, 以脚本自身的作用域区分
+        int compareSecond = Integer.compare(System.identityHashCode(scope), System.identityHashCode(o.scope));
+        if(compareSecond != 0) return compareSecond;
         return function.compareTo(o.function);
     }
 
@@ -58,12 +102,14 @@ public class ExecutorFunction implements Executor<ExecutorFunction> {
         ExecutorFunction that = (ExecutorFunction) o;
 
         if (!script.equals(that.script)) return false;
+        if (scope != that.scope) return false;
         return function.equals(that.function);
     }
 
     @Override
     public int hashCode() {
         int result = script.hashCode();
+        result = 31 * result + System.identityHashCode(scope);
         result = 31 * result + function.hashCode();
         return result;
     }
@@ -18,20 +18,31 @@
 
 package com.minecraft.moonlake.script.execute;
 
+import com.minecraft.moonlake.script.api.MoonLakeScriptListener;
+import com.minecraft.moonlake.script.engine.ScriptEngineProvider;
+import org.bukkit.event.Event;
+
 import javax.script.Invocable;
 
 public class ExecutorMethod implements Executor<ExecutorMethod> {
 
+    private final ScriptEngineProvider provider;
     private final Invocable script;
     private final Object instance;
     private final String method;
+    private volatile MoonLakeScriptListener handle;
 
-    public ExecutorMethod(Invocable script, Object instance, String method) {
+    public ExecutorMethod(ScriptEngineProvider provider, Invocable script, Object instance, String method) {
+        this.provider = provider;
         this.script = script;
         this.instance = instance;
         this.method = method;
     }
 
+    public ScriptEngineProvider getProvider() {
+        return provider;
+    }
+
     public Invocable getScript() {
         return script;
     }
@@ -44,17 +55,36 @@ public class ExecutorMethod implements Executor<ExecutorMethod> {
         return method;
     }
 
+    public MoonLakeScriptListener resolve() {
+        // 将对象的成员函数绑定 this 后解析为可直接调用的句柄
+        // 引擎不支持绑定则返回 null, 调用时由引擎提供者的 invoke 保留 this
+        return this.handle = provider.toListener(instance, method);
+    }
+
+    @Override
+    public Object execute(Object argument) throws Exception {
+        // 单参数的事件调用: 使用已解析的句柄, 不分配参数数组
+        MoonLakeScriptListener handle = this.handle;
+        if(handle == null)
+            handle = resolve();
+        if(handle != null && argument instanceof Event) {
+            handle.handler((Event) argument);
+            return null;
+        }
+        return execute(new Object[] { argument });
+    }
+
     @Override
     public Object execute(Object... argument) throws Exception {
-        return script.invokeMethod(instance, method, argument);
+        return provider.invoke(script, instance, method, argument);
     }
 
     @Override
     public int compareTo(ExecutorMethod o) {
-        int compareFirst = script.hashCode() - o.script.hashCode();
+        int compareFirst = Integer.compare(script.hashCode(), o.script.hashCode());
         if(compareFirst != 0) return compareFirst;
 
-        int compareSecond = instance.hashCode() - o.instance.hashCode();
+        int compareSecond = Integer.compare(instance.hashCode(), o.instance.hashCode());
         if(compareSecond != 0) return compareSecond;
         return method.compareTo(o.method);
     }
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.execute;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public final class ScriptBudget {
+
+    private final String name;
+    private final Logger logger;
+    private final long budgetNanos;
+    private final int throttle;
+    private final int suspend;
+    private final AtomicLong spentNanos = new AtomicLong();
+    // 主线程单次执行耗时的滑动平均, 限流时用于预估下一次执行是否会超出预算
+    private volatile long averageNanos;
+    private volatile int strikes;
+    private volatile boolean suspended;
+    // 连续没有执行任何处理器或任务的 tick 数, 只由主线程修改
+    private volatile long idleTicks;
+    // 本 tick 是否执行过处理器或任务, 包括异步线程
+    private volatile boolean executed;
+    // 服务器主线程: 脚本在主线程创建, tick 也由主线程调用, 只有主线程的耗时计入预算
+    private volatile Thread primaryThread;
+
+    // 看门狗读取的正在执行的处理器: 每个线程一个记录, 嵌套执行 (处理器触发同一脚本的事件) 只记录最外层
+    private final Map<Thread, Running> runningMap = new ConcurrentHashMap<>();
+    private final ThreadLocal<Running> localRunning = ThreadLocal.withInitial(Running::new);
+
+    public ScriptBudget(String name, Logger logger, long budgetMillis, int throttle, int suspend) {
+        this.name = name;
+        this.logger = logger;
+        this.budgetNanos = budgetMillis * 1000000L;
+        this.throttle = throttle;
+        this.suspend = suspend;
+        this.primaryThread = Thread.currentThread();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isThrottled() {
+        return strikes >= throttle;
+    }
+
+    public boolean isSuspended() {
+        return suspended;
+    }
+
+    public long getIdleTicks() {
+        return idleTicks;
+    }
+
+    public void resume() {
+        // 恢复已被挂起的脚本: /mls resume <script>
+        strikes = 0;
+        suspended = false;
+    }
+
+    public boolean isExhausted() {
+        // 获取本 tick 的预算是否已经用完, 没有预算则永远不会用完
+        return budgetNanos > 0L && spentNanos.get() >= budgetNanos;
+    }
+
+    public boolean acquire() {
+        // 获取是否允许执行: 已挂起则跳过, 限流中则只允许预计不会超出本 tick 预算的执行
+        // 异步线程的执行不占用服务器 tick, 不计入预算也不会被限流
+        if(suspended)
+            return false;
+        return budgetNanos <= 0L || !isThrottled() || Thread.currentThread() != primaryThread || spentNanos.get() + averageNanos <= budgetNanos;
+    }
+
+    public long enter(Executor<?> executor) {
+        // 进入处理器, 记录给看门狗
+        long start = System.nanoTime();
+        Running running = localRunning.get();
+        if(running.depth++ == 0) {
+            running.executor = executor;
+            running.since = start;
+            runningMap.put(Thread.currentThread(), running);
+        }
+        return start;
+    }
+
+    public long exit(long start) {
+        // 退出处理器并累计本 tick 主线程的耗时, 返回本次执行的耗时
+        long elapsed = System.nanoTime() - start;
+        executed = true;
+        if(Thread.currentThread() == primaryThread) {
+            spentNanos.addAndGet(elapsed);
+            long average = averageNanos;
+            averageNanos = average + ((elapsed - average) >> 3);
+        }
+        Running running = localRunning.get();
+        if(--running.depth == 0) {
+            runningMap.remove(Thread.currentThread());
+            running.executor = null;
+        }
+        return elapsed;
+    }
+
+    public void tick() {
+        // tick 结束: 由主线程调用, 检查本 tick 是否超出预算
+        primaryThread = Thread.currentThread();
+        long spent = spentNanos.getAndSet(0L);
+        idleTicks = executed ? 0L : idleTicks + 1L;
+        executed = false;
+        if(budgetNanos <= 0L || suspended)
+            return;
+        if(spent <= budgetNanos) {
+            // 未超出预算则重置, 限流后回到预算内同样解除限流
+            strikes = 0;
+            return;
+        }
+        int strikes = ++this.strikes;
+        if(strikes < throttle) {
+            logger.warning("The script '" + name + "' used " + (spent / 1000000L) + "ms in one tick. (budget: " + (budgetNanos / 1000000L) + "ms)");
+        } else if(strikes == throttle) {
+            logger.warning("The script '" + name + "' exceeded the tick budget " + strikes + " times, throttled.");
+        } else if(strikes >= throttle + suspend) {
+            suspended = true;
+            logger.log(Level.SEVERE, "The script '" + name + "' still exceeded the tick budget while throttled, suspended. (resume: /mls resume " + name + ")");
+        }
+    }
+
+    Set<Map.Entry<Thread, Running>> getRunning() {
+        // 获取所有线程正在执行的最外层处理器
+        return runningMap.entrySet();
+    }
+
+    final static class Running {
+
+        // 嵌套深度只由所属线程访问
+        private int depth;
+        volatile Executor<?> executor;
+        volatile long since;
+        // 看门狗最后一次报告的执行, 只由看门狗线程访问
+        long reportedSince;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.execute;
+
+import com.minecraft.moonlake.validate.Validate;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public final class ScriptMailbox {
+
+    private final String name;
+    private final Logger logger;
+    private final int capacity;
+    private final int batch;
+    private final Object lock = new Object();
+    private final Queue<Callable<?>> queue = new ConcurrentLinkedQueue<>();
+    // 邮箱内的投递数量, ConcurrentLinkedQueue 的 size 需要遍历
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed;
+
+    public ScriptMailbox(String name, Logger logger, int capacity, int batch) {
+        // 有界的邮箱: 已满时丢弃新的投递, 主线程每 tick 最多处理 batch 个投递
+        Validate.isTrue(capacity > 0, "The mailbox capacity must be greater than 0.");
+        Validate.isTrue(batch > 0, "The mailbox batch must be greater than 0.");
+        this.name = name;
+        this.logger = logger;
+        this.capacity = capacity;
+        this.batch = batch;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Object getLock() {
+        // 邮箱的处理锁: 立即执行的处理器持有此锁, 保证同一时刻只有一个线程进入脚本
+        return lock;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public boolean post(Callable<?> task) {
+        // 投递到邮箱: 无锁并且不会阻塞投递的线程, 已满则丢弃并返回 false
+        if(closed)
+            return false;
+        if(size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            long count = dropped.incrementAndGet();
+            if(count == 1L || count % 1000L == 0L)
+                logger.warning("The script '" + name + "' mailbox is full, " + count + " tasks dropped. (capacity: " + capacity + ")");
+            return false;
+        }
+        queue.offer(task);
+        return true;
+    }
+
+    public int drain(ScriptBudget budget) {
+        // 处理邮箱内的投递, 只能由唯一的处理线程调用
+        // 每次最多处理 batch 个, 脚本本 tick 的预算用完后剩余的投递留到下一个 tick, 每次至少处理一个
+        if(queue.isEmpty())
+            return 0;
+        int count = 0;
+        synchronized (lock) {
+            Callable<?> task;
+            while(!closed && count < batch && (count == 0 || budget == null || !budget.isExhausted()) && (task = queue.poll()) != null) {
+                size.decrementAndGet();
+                try {
+                    task.call();
+                } catch (Exception e) {
+                    logger.log(Level.SEVERE, "The script '" + name + "' mailbox execute task exception", e);
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public void close() {
+        // 关闭邮箱并丢弃未处理的投递
+        closed = true;
+        queue.clear();
+        size.set(0);
+    }
+}
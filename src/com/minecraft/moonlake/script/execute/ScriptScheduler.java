@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.execute;
+
+import com.minecraft.moonlake.validate.Validate;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public final class ScriptScheduler {
+
+    // 分层时间轮: 4 层每层 64 个槽, 最大延迟为 2^24 tick
+    private final static int BITS = 6;
+    private final static int SIZE = 1 << BITS;
+    private final static int MASK = SIZE - 1;
+    private final static int LEVELS = 4;
+    private final static long MAX_DELAY = (1L << (BITS * LEVELS)) - 1L;
+
+    private final Logger logger;
+    private final ScriptTask[][] heads = new ScriptTask[LEVELS][SIZE];
+    private final ScriptTask[][] tails = new ScriptTask[LEVELS][SIZE];
+    private final Queue<ScriptTask> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicLong taskId = new AtomicLong();
+    private final ExecutorService asyncPool;
+    private long now;
+
+    public ScriptScheduler(Logger logger) {
+        this.logger = logger;
+        this.asyncPool = Executors.newCachedThreadPool(new SchedulerThreadFactory());
+    }
+
+    public ScriptTask schedule(Runnable task, ScriptBudget budget, ScriptMailbox mailbox, Set<ScriptTask> owner, boolean async, long delay, long period) {
+        // 调度任务: 任意线程调用, 在下一次 tick 时以 O(1) 放入时间轮
+        Validate.notNull(task, "The task object is null.");
+        ScriptTask scriptTask = new ScriptTask(taskId.incrementAndGet(), task, budget, mailbox, owner, async, delay, period);
+        if(owner != null)
+            owner.add(scriptTask);
+        pending.offer(scriptTask);
+        return scriptTask;
+    }
+
+    public void tick() {
+        // 由主线程每 tick 调用: 放入新任务, 推进时间轮并批量执行到期的任务
+        ScriptTask task;
+        while((task = pending.poll()) != null)
+            if(!task.isCancelled())
+                insert(task, now + Math.max(task.delay, 1L));
+
+        long now = ++this.now;
+        int index = (int) (now & MASK);
+        // 低层转完一圈则将高层对应槽的任务重新分布到低层
+        for(int level = 1; index == 0 && level < LEVELS; level++) {
+            index = (int) ((now >> (BITS * level)) & MASK);
+            cascade(level, index);
+        }
+        index = (int) (now & MASK);
+        ScriptTask head = heads[0][index];
+        heads[0][index] = tails[0][index] = null;
+
+        while(head != null) {
+            ScriptTask current = head;
+            head = current.next;
+            current.next = null;
+            if(current.isCancelled())
+                continue;
+            if(current.isAsync()) {
+                // 重复的异步任务上一次执行尚未结束则跳过本周期, 同一个任务不会并发执行
+                if(current.tryStart())
+                    runAsync(current);
+            } else
+                run(current);
+            if(current.isRepeating() && !current.isCancelled())
+                insert(current, now + current.period);
+        }
+    }
+
+    public void shutdown() {
+        // 关闭调度器: 丢弃所有任务并关闭异步线程池
+        pending.clear();
+        for(int level = 0; level < LEVELS; level++) {
+            for(int index = 0; index < SIZE; index++) {
+                for(ScriptTask task = heads[level][index]; task != null; task = task.next)
+                    task.cancel();
+                heads[level][index] = tails[level][index] = null;
+            }
+        }
+        asyncPool.shutdown();
+        try {
+            asyncPool.awaitTermination(1L, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runAsync(ScriptTask task) {
+        // 执行异步任务, 执行结束后才允许下一个周期执行
+        // 邮箱模式的异步任务投递到脚本的邮箱, 与脚本的其他代码串行执行, 线程池不会持有邮箱锁阻塞主线程处理邮箱
+        Runnable body = () -> {
+            try {
+                run(task);
+            } finally {
+                task.finish();
+            }
+        };
+        ScriptMailbox mailbox = task.getMailbox();
+        if(mailbox == null) {
+            asyncPool.execute(body);
+        } else if(!mailbox.post(() -> {
+            body.run();
+            return null;
+        })) {
+            // 邮箱已满或已关闭则跳过本周期
+            task.finish();
+        }
+    }
+
+    private void run(ScriptTask task) {
+        try {
+            task.run();
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "The script task " + task + " execute exception", e);
+        }
+    }
+
+    private void insert(ScriptTask task, long deadline) {
+        // 根据距离到期的 tick 数选择层级, 重新分布时到期的任务放入当前 tick 的槽
+        long delta = Math.min(Math.max(deadline - now, 0L), MAX_DELAY);
+        task.deadline = now + delta;
+        int level = 0;
+        while(level < LEVELS - 1 && delta >= (1L << (BITS * (level + 1))))
+            level++;
+        int index = (int) ((task.deadline >> (BITS * level)) & MASK);
+        // 追加到槽的尾部, 同一槽的任务按调度顺序执行
+        task.next = null;
+        if(tails[level][index] == null)
+            heads[level][index] = task;
+        else
+            tails[level][index].next = task;
+        tails[level][index] = task;
+    }
+
+    private void cascade(int level, int index) {
+        // 将高层槽的任务按剩余时间重新放入
+        ScriptTask head = heads[level][index];
+        heads[level][index] = tails[level][index] = null;
+        while(head != null) {
+            ScriptTask current = head;
+            head = current.next;
+            if(!current.isCancelled())
+                insert(current, current.deadline);
+        }
+    }
+
+    private final static class SchedulerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "MoonLakeScript-Scheduler-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
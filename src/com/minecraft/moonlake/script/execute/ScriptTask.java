@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.execute;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public final class ScriptTask implements Executor<ScriptTask> {
+
+    private final long id;
+    private final ScriptBudget budget;
+    private final ScriptMailbox mailbox;
+    private final Set<ScriptTask> owner;
+    private final boolean async;
+    final long delay;
+    final long period;
+    private volatile Runnable task;
+    private volatile boolean cancelled;
+    // 异步任务是否正在执行
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // 时间轮内部使用, 只由主线程访问
+    long deadline;
+    ScriptTask next;
+
+    ScriptTask(long id, Runnable task, ScriptBudget budget, ScriptMailbox mailbox, Set<ScriptTask> owner, boolean async, long delay, long period) {
+        this.id = id;
+        this.task = task;
+        this.budget = budget;
+        this.mailbox = mailbox;
+        this.owner = owner;
+        this.async = async;
+        this.delay = delay;
+        this.period = period;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    ScriptMailbox getMailbox() {
+        return mailbox;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public boolean isRepeating() {
+        return period > 0L;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void cancel() {
+        // 取消任务: O(1) 标记并释放脚本函数的引用, 时间轮到期时丢弃
+        cancelled = true;
+        task = null;
+        if(owner != null)
+            owner.remove(this);
+    }
+
+    boolean tryStart() {
+        // 标记异步任务开始执行, 上一次执行尚未结束则返回 false
+        return running.compareAndSet(false, true);
+    }
+
+    void finish() {
+        running.set(false);
+    }
+
+    void run() throws Exception {
+        // 执行任务: 与脚本的邮箱互斥, 并计入脚本的执行时间预算
+        if(mailbox == null) {
+            invoke();
+        } else {
+            synchronized (mailbox.getLock()) {
+                invoke();
+            }
+        }
+        if(!isRepeating())
+            cancel();
+    }
+
+    private void invoke() throws Exception {
+        if(cancelled || (budget != null && !budget.acquire()))
+            return;
+        long start = budget != null ? budget.enter(this) : 0L;
+        try {
+            execute();
+        } finally {
+            if(budget != null)
+                budget.exit(start);
+        }
+    }
+
+    @Override
+    public Object execute(Object... argument) throws Exception {
+        Runnable task = this.task;
+        if(task != null)
+            task.run();
+        return null;
+    }
+
+    @Override
+    public int compareTo(ScriptTask o) {
+        return Long.compare(id, o.id);
+    }
+
+    @Override
+    public String toString() {
+        return "ScriptTask{" +
+                "id=" + id +
+                ", async=" + async +
+                ", period=" + period +
+                '}';
+    }
+}
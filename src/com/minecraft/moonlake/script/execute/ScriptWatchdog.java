@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.execute;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.logging.Logger;
+
+public final class ScriptWatchdog implements Runnable {
+
+    private final Logger logger;
+    private final long limitNanos;
+    private final Set<ScriptBudget> budgetSet = new CopyOnWriteArraySet<>();
+    private volatile Thread thread;
+
+    public ScriptWatchdog(Logger logger, long limitMillis) {
+        this.logger = logger;
+        this.limitNanos = limitMillis * 1000000L;
+    }
+
+    public void register(ScriptBudget budget) {
+        budgetSet.add(budget);
+    }
+
+    public void unregister(ScriptBudget budget) {
+        budgetSet.remove(budget);
+    }
+
+    public void start() {
+        // 启动看门狗线程
+        if(limitNanos <= 0L || thread != null)
+            return;
+        thread = new Thread(this, "MoonLakeScript-Watchdog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void shutdown() {
+        // 关闭看门狗线程
+        Thread thread = this.thread;
+        this.thread = null;
+        if(thread != null)
+            thread.interrupt();
+    }
+
+    @Override
+    public void run() {
+        while(thread == Thread.currentThread()) {
+            try {
+                Thread.sleep(Math.max(100L, limitNanos / 1000000L / 4L));
+            } catch (InterruptedException e) {
+                break;
+            }
+            long now = System.nanoTime();
+            for(ScriptBudget budget : budgetSet) {
+                for(Map.Entry<Thread, ScriptBudget.Running> entry : budget.getRunning()) {
+                    ScriptBudget.Running running = entry.getValue();
+                    Executor<?> executor = running.executor;
+                    long since = running.since;
+                    // 同一次执行只报告一次
+                    if(executor == null || since == running.reportedSince || now - since < limitNanos)
+                        continue;
+                    running.reportedSince = since;
+                    Thread runningThread = entry.getKey();
+                    StringBuilder builder = new StringBuilder()
+                            .append("The script '").append(budget.getName()).append("' handler ")
+                            .append(describe(executor)).append(" stuck for ")
+                            .append((now - since) / 1000000L).append("ms on thread '").append(runningThread.getName()).append("':");
+                    for(StackTraceElement element : runningThread.getStackTrace())
+                        builder.append("\n\tat ").append(element);
+                    logger.severe(builder.toString());
+                }
+            }
+        }
+    }
+
+    static String describe(Executor<?> executor) {
+        // 获取处理器的描述: 函数名或者方法名
+        if(executor instanceof ExecutorFunction)
+            return "function '" + ((ExecutorFunction) executor).getFunction() + "'";
+        if(executor instanceof ExecutorMethod)
+            return "method '" + ((ExecutorMethod) executor).getMethod() + "'";
+        return String.valueOf(executor);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.listener;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+final class ClassHeader {
+
+    private final static int ACC_PUBLIC = 0x0001;
+    private final static int ACC_INTERFACE = 0x0200;
+    private final static int ACC_ABSTRACT = 0x0400;
+
+    private final int access;
+    private final String name;
+    private final String superName;
+
+    private ClassHeader(int access, String name, String superName) {
+        this.access = access;
+        this.name = name;
+        this.superName = superName;
+    }
+
+    public String getName() {
+        // 内部类名, 例如 org/bukkit/event/Event
+        return name;
+    }
+
+    public String getSuperName() {
+        // 超类的内部类名, java/lang/Object 则为 null
+        return superName;
+    }
+
+    public boolean isConcrete() {
+        // 是否为 public 并且不是抽象类以及接口
+        return (access & ACC_PUBLIC) != 0 && (access & (ACC_ABSTRACT | ACC_INTERFACE)) == 0;
+    }
+
+    public boolean isAbstract() {
+        // 是否为 public 的抽象类, 不包括接口
+        return (access & ACC_PUBLIC) != 0 && (access & ACC_ABSTRACT) != 0 && (access & ACC_INTERFACE) == 0;
+    }
+
+    public String getClassName() {
+        // 完整类名
+        return name.replace('/', '.');
+    }
+
+    public static ClassHeader read(InputStream input) throws IOException {
+        // 只读取类文件的头部: 常量池, 访问标志, 类名以及超类名, 不会加载类
+        DataInputStream data = new DataInputStream(input);
+        if(data.readInt() != 0xCAFEBABE)
+            throw new IOException("The input not is class file.");
+        data.skipBytes(4); // minor & major version
+        int count = data.readUnsignedShort();
+        String[] utf8 = new String[count];
+        int[] classes = new int[count];
+
+        for(int i = 1; i < count; i++) {
+            int tag = data.readUnsignedByte();
+            switch (tag) {
+                case 1: // Utf8
+                    utf8[i] = data.readUTF();
+                    break;
+                case 7: // Class
+                    classes[i] = data.readUnsignedShort();
+                    break;
+                case 8: case 16: case 19: case 20: // String, MethodType, Module, Package
+                    data.skipBytes(2);
+                    break;
+                case 15: // MethodHandle
+                    data.skipBytes(3);
+                    break;
+                case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+                    data.skipBytes(4);
+                    break;
+                case 5: case 6: // Long, Double 占用两个常量池位置
+                    data.skipBytes(8);
+                    i++;
+                    break;
+                default:
+                    throw new IOException("The class file constant pool tag '" + tag + "' unknown.");
+            }
+        }
+        int access = data.readUnsignedShort();
+        int thisClass = data.readUnsignedShort();
+        int superClass = data.readUnsignedShort();
+        return new ClassHeader(access, utf8[classes[thisClass]], superClass != 0 ? utf8[classes[superClass]] : null);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.listener;
+
+import com.minecraft.moonlake.validate.Validate;
+import org.bukkit.event.Event;
+
+import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+public final class EventCoalescer {
+
+    private final Class<? extends Event> event;
+    private final Function<Event, Object> key;
+    private final int interval;
+    private final int max;
+    private Map<Object, Event> keyMap;
+    private ArrayDeque<Event> queue;
+    private int elapsed;
+
+    public EventCoalescer(Class<? extends Event> event, String key, int interval, int max) {
+        // 合并模式: 事件在 Java 侧缓冲, 每 interval tick 将一批事件以数组交给处理器
+        // key 不为 null 则每个键只保留最新的事件, 否则只保留最新的 max 个事件, 键的数量同样不超过 max
+        Validate.notNull(event, "The event class object is null.");
+        Validate.isTrue(interval > 0, "The coalesce interval must be greater than 0.");
+        Validate.isTrue(max > 0, "The coalesce max must be greater than 0.");
+        this.event = event;
+        this.key = key != null ? EventFilter.accessorOf(event, key) : null;
+        this.interval = interval;
+        this.max = max;
+        Validate.isTrue(key == null || this.key != null, "The coalesce key '" + key + "' not support event: " + event.getSimpleName());
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    public synchronized void offer(Event event) {
+        // 缓冲事件, 异步事件也可能调用所以需要同步
+        if(key != null) {
+            if(keyMap == null)
+                keyMap = new LinkedHashMap<>();
+            Object value = key.apply(event);
+            // 键为 null 的事件共用一个键
+            if(keyMap.put(value, event) == null && keyMap.size() > max)
+                keyMap.remove(keyMap.keySet().iterator().next());
+        } else {
+            if(queue == null)
+                queue = new ArrayDeque<>();
+            if(queue.size() >= max)
+                queue.pollFirst();
+            queue.addLast(event);
+        }
+    }
+
+    public synchronized Event[] poll() {
+        // 由主线程每 tick 调用, 到达间隔并且有缓冲的事件则返回事件类型的数组, 否则返回 null
+        if(++elapsed < interval)
+            return null;
+        elapsed = 0;
+        Collection<Event> buffer = key != null ? (keyMap != null ? keyMap.values() : null) : queue;
+        if(buffer == null || buffer.isEmpty())
+            return null;
+        Event[] batch = buffer.toArray((Event[]) Array.newInstance(event, buffer.size()));
+        buffer.clear();
+        return batch;
+    }
+
+    public synchronized void clear() {
+        // 丢弃所有缓冲的事件
+        if(keyMap != null)
+            keyMap.clear();
+        if(queue != null)
+            queue.clear();
+    }
+}
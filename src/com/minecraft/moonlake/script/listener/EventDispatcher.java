@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.listener;
+
+import com.minecraft.moonlake.MoonLakeAPI;
+import com.minecraft.moonlake.api.event.MoonLakeListener;
+import com.minecraft.moonlake.exception.MoonLakeException;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+public final class EventDispatcher {
+
+    private final Plugin plugin;
+    private final Map<ChannelKey, Channel> channelMap = new HashMap<>();
+    // 以监听器对象本身为键: 同一个处理器可以以不同的优先度注册多次, 这些监听器相等但是互相独立
+    private final Map<EventListener<?>, Channel[]> listenerMap = new IdentityHashMap<>();
+
+    public EventDispatcher(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    public synchronized void register(EventListener<?> listener, EventPriority priority, boolean ignoreCancelled) {
+        // 注册脚本事件监听器: 每个 (处理器列表, 优先度, 忽略已阻止) 只会向 Bukkit 注册一次
+        // 订阅子类的监听器会加入所有子类的处理器列表的通道
+        if(listenerMap.containsKey(listener))
+            return;
+        Map<HandlerList, List<Class<? extends Event>>> handlerMap = getHandlerMap(listener);
+        if(handlerMap.isEmpty())
+            throw new MoonLakeException("The event class '" + listener.getEvent().getName() + "' not has any listenable subclass.");
+        Channel[] channels = new Channel[handlerMap.size()];
+        int index = 0;
+
+        try {
+            for(Map.Entry<HandlerList, List<Class<? extends Event>>> entry : handlerMap.entrySet()) {
+                ChannelKey key = new ChannelKey(entry.getKey(), priority, ignoreCancelled);
+                Channel channel = channelMap.get(key);
+
+                if(channel == null) {
+                    // 通道不存在则创建并注册到 Bukkit, 使用任意一个共享此处理器列表的事件类注册
+                    // 注册成功后才发布通道, 注册失败不会留下没有注册到 Bukkit 的通道
+                    channel = new Channel(key);
+                    MoonLakeAPI.registerEvent(entry.getValue().get(0), channel, priority, channel, plugin, ignoreCancelled);
+                    channelMap.put(key, channel);
+                }
+                channels[index++] = channel;
+                channel.add(listener, entry.getValue());
+            }
+        } catch (RuntimeException e) {
+            // 回滚已经加入的通道, 为空的通道从 Bukkit 卸载
+            Set<EventListener<?>> removed = identitySet(Collections.singleton(listener));
+            for(int i = 0; i < index; i++)
+                if(channels[i].remove(removed))
+                    removeChannel(channels[i]);
+            throw e;
+        }
+        listenerMap.put(listener, channels);
+    }
+
+    private static Map<HandlerList, List<Class<? extends Event>>> getHandlerMap(EventListener<?> listener) {
+        // 按处理器列表分组监听器接收的具体事件类
+        Map<HandlerList, List<Class<? extends Event>>> handlerMap = new LinkedHashMap<>();
+        if(!listener.isSubtypes()) {
+            // 只接收完全相同的事件类, 无法获取处理器列表则异常
+            handlerMap.put(EventMapping.getHandler(listener.getEvent()), new ArrayList<>(Arrays.asList(listener.getEvent())));
+            return handlerMap;
+        }
+        for(Class<? extends Event> subtype : EventMapping.INSTANCE.getSubtypes(listener.getEvent())) {
+            HandlerList handlerList;
+            try {
+                handlerList = EventMapping.getHandler(subtype);
+            } catch (MoonLakeException e) {
+                // 没有处理器列表的子类无法监听则跳过
+                continue;
+            }
+            handlerMap.computeIfAbsent(handlerList, key -> new ArrayList<>()).add(subtype);
+        }
+        return handlerMap;
+    }
+
+    public synchronized boolean unregister(EventListener<?> listener) {
+        // 卸载脚本事件监听器: 通道为空时才会从 Bukkit 卸载
+        Channel[] channels = listenerMap.remove(listener);
+        if(channels == null)
+            return false;
+        for(Channel channel : channels)
+            if(channel.remove(identitySet(Collections.singleton(listener))))
+                removeChannel(channel);
+        return true;
+    }
+
+    public synchronized void unregisterAll(Collection<? extends EventListener<?>> listeners) {
+        // 批量卸载脚本事件监听器: 按通道分组, 每个通道只重建一次数组, 为空时只从 Bukkit 卸载一次
+        Map<Channel, Set<EventListener<?>>> groupMap = new HashMap<>();
+        for(EventListener<?> listener : listeners) {
+            Channel[] channels = listenerMap.remove(listener);
+            if(channels != null)
+                for(Channel channel : channels)
+                    groupMap.computeIfAbsent(channel, key -> identitySet(Collections.emptySet())).add(listener);
+        }
+        groupMap.forEach((channel, removed) -> {
+            if(channel.remove(removed))
+                removeChannel(channel);
+        });
+    }
+
+    public synchronized void unregisterAll() {
+        // 卸载全部的通道
+        new ArrayList<>(channelMap.values()).forEach(this::removeChannel);
+        listenerMap.clear();
+    }
+
+    public void forward(Listener channel, Collection<? extends EventListener<?>> listeners, Event event) {
+        // 将正在分发的事件交给指定通道内的监听器: 这些监听器在通道执行期间才注册, 不在通道已经读取的分发表中
+        List<EventListener<?>> targetList = new ArrayList<>();
+        synchronized (this) {
+            for(EventListener<?> listener : listeners) {
+                Channel[] channels = listenerMap.get(listener);
+                if(channels != null && Arrays.asList(channels).contains(channel))
+                    targetList.add(listener);
+            }
+        }
+        for(EventListener<?> listener : targetList) {
+            try {
+                listener.execute(channel, event);
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not pass event " + event.getClass().getSimpleName() + " to " + listener, e);
+            }
+        }
+    }
+
+    private static Set<EventListener<?>> identitySet(Collection<EventListener<?>> listeners) {
+        Set<EventListener<?>> set = Collections.newSetFromMap(new IdentityHashMap<>());
+        set.addAll(listeners);
+        return set;
+    }
+
+    private void removeChannel(Channel channel) {
+        // 从 Bukkit 的处理器列表卸载通道
+        channelMap.remove(channel.key);
+        channel.key.handlerList.unregister(channel);
+    }
+
+    private final class Channel implements MoonLakeListener, EventExecutor {
+
+        private final ChannelKey key;
+        // 已知会由此处理器列表分发的具体事件类, 只由分发器在同步块中访问
+        private final Set<Class<?>> eventSet = new HashSet<>();
+        private volatile EventListener<?>[] listeners = new EventListener<?>[0];
+        // 分发表: 具体事件类 -> 接收此类事件的监听器数组, 写时复制, 分发时只需要一次查找
+        private volatile Map<Class<?>, EventListener<?>[]> table = new IdentityHashMap<>();
+
+        private Channel(ChannelKey key) {
+            this.key = key;
+        }
+
+        private void add(EventListener<?> listener, Collection<Class<? extends Event>> events) {
+            // 写时复制: 分发时读取的数组以及分发表永远不会被修改
+            EventListener<?>[] listeners = this.listeners;
+            EventListener<?>[] copy = Arrays.copyOf(listeners, listeners.length + 1);
+            copy[listeners.length] = listener;
+            this.listeners = copy;
+            eventSet.addAll(events);
+            rebuild();
+        }
+
+        private boolean remove(Collection<EventListener<?>> removed) {
+            // 写时复制批量移除, 返回通道是否已经为空
+            EventListener<?>[] listeners = this.listeners;
+            List<EventListener<?>> copy = new ArrayList<>(listeners.length);
+            for(EventListener<?> listener : listeners)
+                if(!removed.contains(listener))
+                    copy.add(listener);
+            this.listeners = copy.toArray(new EventListener<?>[copy.size()]);
+            rebuild();
+            return copy.isEmpty();
+        }
+
+        private void rebuild() {
+            // 重新计算所有已知事件类的监听器数组
+            Set<Class<?>> eventSet = new HashSet<>(this.eventSet);
+            eventSet.addAll(table.keySet());
+            Map<Class<?>, EventListener<?>[]> table = new IdentityHashMap<>(eventSet.size());
+            for(Class<?> event : eventSet)
+                table.put(event, match(event));
+            this.table = table;
+        }
+
+        private EventListener<?>[] match(Class<?> event) {
+            // 按注册顺序筛选接收指定事件类的监听器
+            List<EventListener<?>> matched = new ArrayList<>();
+            for(EventListener<?> listener : listeners)
+                if(listener.accepts(event))
+                    matched.add(listener);
+            return matched.toArray(new EventListener<?>[matched.size()]);
+        }
+
+        private EventListener<?>[] resolve(Class<?> event) {
+            // 分发表中不存在的事件类, 例如未映射的插件事件共享了此处理器列表, 计算后加入分发表
+            synchronized (EventDispatcher.this) {
+                EventListener<?>[] matched = table.get(event);
+                if(matched == null) {
+                    matched = match(event);
+                    Map<Class<?>, EventListener<?>[]> copy = new IdentityHashMap<>(table);
+                    copy.put(event, matched);
+                    table = copy;
+                }
+                return matched;
+            }
+        }
+
+        @Override
+        public void execute(Listener listener, Event event) throws EventException {
+            // 处理器列表可能由多个事件类共享, 通过分发表获取接收此事件类的监听器
+            EventListener<?>[] listeners = table.get(event.getClass());
+            if(listeners == null)
+                listeners = resolve(event.getClass());
+            for(int i = 0; i < listeners.length; i++) {
+                try {
+                    listeners[i].dispatch(this, event);
+                } catch (Exception e) {
+                    // 单个脚本的异常不影响其他脚本
+                    plugin.getLogger().log(Level.SEVERE, "Could not pass event " + event.getClass().getSimpleName() + " to " + listeners[i], e);
+                }
+            }
+        }
+    }
+
+    private final static class ChannelKey {
+
+        private final HandlerList handlerList;
+        private final EventPriority priority;
+        private final boolean ignoreCancelled;
+
+        private ChannelKey(HandlerList handlerList, EventPriority priority, boolean ignoreCancelled) {
+            this.handlerList = handlerList;
+            this.priority = priority;
+            this.ignoreCancelled = ignoreCancelled;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            ChannelKey that = (ChannelKey) o;
+
+            if (ignoreCancelled != that.ignoreCancelled) return false;
+            if (handlerList != that.handlerList) return false;
+            return priority == that.priority;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(handlerList);
+            result = 31 * result + priority.hashCode();
+            result = 31 * result + (ignoreCancelled ? 1 : 0);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.listener;
+
+import com.minecraft.moonlake.exception.MoonLakeException;
+import com.minecraft.moonlake.validate.Validate;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.block.BlockEvent;
+import org.bukkit.event.entity.EntityEvent;
+import org.bukkit.event.player.PlayerEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.world.WorldEvent;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+public final class EventFilter {
+
+    private EventFilter() {
+    }
+
+    public static Predicate<Event> compile(Class<? extends Event> event, Map<?, ?> filter) {
+        // 将声明式的过滤器编译为 Java 谓词, 事件访问器在编译时根据事件类解析一次
+        // 支持的属性: worlds -> 世界名称
+        //                     permission -> 玩家权限
+        //                     entities -> 实体类型
+        //                     materials -> 方块或物品类型
+        //                     properties -> 事件属性的简单相等
+        // 过滤器为空则返回 null
+        Validate.notNull(event, "The event class object is null.");
+        if(filter == null || filter.isEmpty())
+            return null;
+        List<Predicate<Event>> predicateList = new ArrayList<>();
+
+        for(Map.Entry<?, ?> entry : filter.entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            Object value = entry.getValue();
+            switch (key) {
+                case "worlds":
+                    predicateList.add(worlds(event, toStrings(value)));
+                    break;
+                case "permission":
+                    predicateList.add(permission(event, String.valueOf(value)));
+                    break;
+                case "entities":
+                    predicateList.add(entities(event, toStrings(value)));
+                    break;
+                case "materials":
+                    predicateList.add(materials(event, toStrings(value)));
+                    break;
+                case "properties":
+                    Validate.isTrue(value instanceof Map, "The listener filter 'properties' not is object.");
+                    for(Map.Entry<?, ?> property : ((Map<?, ?>) value).entrySet())
+                        predicateList.add(property(event, String.valueOf(property.getKey()), property.getValue()));
+                    break;
+                default:
+                    throw new MoonLakeException("The listener filter not support '" + key + "' key.");
+            }
+        }
+        if(predicateList.size() == 1)
+            return predicateList.get(0);
+        // 按声明顺序短路求值
+        final List<Predicate<Event>> predicates = new ArrayList<>(predicateList);
+        final int size = predicates.size();
+        return (e) -> {
+            for(int i = 0; i < size; i++)
+                if(!predicates.get(i).test(e))
+                    return false;
+            return true;
+        };
+    }
+
+    private static Predicate<Event> worlds(Class<? extends Event> event, Collection<String> names) {
+        // 事件发生的世界名称必须在集合中
+        Function<Event, World> accessor = worldOf(event);
+        Validate.notNull(accessor, "The listener filter 'worlds' not support event: " + event.getSimpleName());
+        final Set<String> nameSet = new HashSet<>(names);
+        return (e) -> {
+            World world = accessor.apply(e);
+            return world != null && nameSet.contains(world.getName());
+        };
+    }
+
+    private static Predicate<Event> permission(Class<? extends Event> event, final String permission) {
+        // 事件的玩家必须拥有权限, 不是玩家触发的事件则不通过
+        Function<Event, Player> accessor = playerOf(event);
+        Validate.notNull(accessor, "The listener filter 'permission' not support event: " + event.getSimpleName());
+        return (e) -> {
+            Player player = accessor.apply(e);
+            return player != null && player.hasPermission(permission);
+        };
+    }
+
+    private static Predicate<Event> entities(Class<? extends Event> event, Collection<String> names) {
+        // 事件的实体类型必须在集合中
+        final Set<EntityType> typeSet = new HashSet<>();
+        names.forEach(name -> typeSet.add(EntityType.valueOf(name.toUpperCase())));
+
+        if(EntityEvent.class.isAssignableFrom(event))
+            return (e) -> typeSet.contains(((EntityEvent) e).getEntityType());
+        if(PlayerEvent.class.isAssignableFrom(event))
+            return (e) -> typeSet.contains(EntityType.PLAYER);
+        throw new MoonLakeException("The listener filter 'entities' not support event: " + event.getSimpleName());
+    }
+
+    private static Predicate<Event> materials(Class<? extends Event> event, Collection<String> names) {
+        // 事件的方块或者物品类型必须在集合中
+        final Set<Material> typeSet = new HashSet<>();
+        names.forEach(name -> typeSet.add(Material.valueOf(name.toUpperCase())));
+
+        if(BlockEvent.class.isAssignableFrom(event))
+            return (e) -> typeSet.contains(((BlockEvent) e).getBlock().getType());
+        if(PlayerInteractEvent.class.isAssignableFrom(event))
+            return (e) -> typeSet.contains(((PlayerInteractEvent) e).getMaterial());
+        throw new MoonLakeException("The listener filter 'materials' not support event: " + event.getSimpleName());
+    }
+
+    private static Predicate<Event> property(Class<? extends Event> event, String name, Object expected) {
+        // 事件属性的 getter 在编译时解析: getName 或者 isName
+        final MethodHandle getter = getterOf(event, name);
+        Validate.notNull(getter, "The listener filter property '" + name + "' not exists in event: " + event.getSimpleName());
+        return (e) -> {
+            try {
+                return matches((Object) getter.invokeExact(e), expected);
+            } catch (Throwable ex) {
+                return false;
+            }
+        };
+    }
+
+    private static boolean matches(Object actual, Object expected) {
+        // 简单相等: 枚举按名称, 数字按数值, 其他按字符串
+        if(actual == null || expected == null)
+            return actual == expected;
+        if(actual instanceof Enum)
+            return ((Enum<?>) actual).name().equalsIgnoreCase(expected.toString());
+        if(actual instanceof Number && expected instanceof Number)
+            return ((Number) actual).doubleValue() == ((Number) expected).doubleValue();
+        if(actual instanceof Boolean)
+            return actual.equals(expected instanceof Boolean ? expected : Boolean.valueOf(expected.toString()));
+        return actual.equals(expected) || actual.toString().equals(expected.toString());
+    }
+
+    private static Function<Event, World> worldOf(Class<? extends Event> event) {
+        // 根据事件类解析获取世界的访问器
+        if(PlayerEvent.class.isAssignableFrom(event))
+            return (e) -> {
+                Player player = ((PlayerEvent) e).getPlayer();
+                return player != null ? player.getWorld() : null;
+            };
+        if(EntityEvent.class.isAssignableFrom(event))
+            return (e) -> {
+                Entity entity = ((EntityEvent) e).getEntity();
+                return entity != null ? entity.getWorld() : null;
+            };
+        if(BlockEvent.class.isAssignableFrom(event))
+            return (e) -> ((BlockEvent) e).getBlock().getWorld();
+        if(WorldEvent.class.isAssignableFrom(event))
+            return (e) -> ((WorldEvent) e).getWorld();
+        return null;
+    }
+
+    private static Function<Event, Player> playerOf(Class<? extends Event> event) {
+        // 根据事件类解析获取玩家的访问器
+        if(PlayerEvent.class.isAssignableFrom(event))
+            return (e) -> ((PlayerEvent) e).getPlayer();
+        if(EntityEvent.class.isAssignableFrom(event))
+            return (e) -> {
+                Entity entity = ((EntityEvent) e).getEntity();
+                return entity instanceof Player ? (Player) entity : null;
+            };
+        return null;
+    }
+
+    static Function<Event, Object> accessorOf(Class<? extends Event> event, String name) {
+        // 根据名称解析事件的访问器: player, entity, block, world 或者事件属性的 getter
+        Function<Event, ?> accessor = null;
+        switch (name) {
+            case "player":
+                accessor = playerOf(event);
+                break;
+            case "entity":
+                if(EntityEvent.class.isAssignableFrom(event))
+                    accessor = (e) -> ((EntityEvent) e).getEntity();
+                else
+                    accessor = playerOf(event);
+                break;
+            case "block":
+                if(BlockEvent.class.isAssignableFrom(event))
+                    accessor = (e) -> ((BlockEvent) e).getBlock();
+                break;
+            case "world":
+                accessor = worldOf(event);
+                break;
+        }
+        if(accessor != null) {
+            final Function<Event, ?> resolved = accessor;
+            return resolved::apply;
+        }
+        final MethodHandle getter = getterOf(event, name);
+        if(getter == null)
+            return null;
+        return (e) -> {
+            try {
+                return (Object) getter.invokeExact(e);
+            } catch (Throwable ex) {
+                return null;
+            }
+        };
+    }
+
+    private static MethodHandle getterOf(Class<? extends Event> event, String name) {
+        // 查找事件类的公开无参 getter 函数并解析为 (Event)Object 类型的方法句柄
+        // 这样每次事件只需要 invokeExact 而不是反射调用
+        String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for(String prefix : new String[] { "get", "is" }) {
+            try {
+                Method method = event.getMethod(prefix + suffix);
+                if(method.getReturnType() != void.class) {
+                    method.setAccessible(true);
+                    return MethodHandles.lookup().unreflect(method).asType(MethodType.methodType(Object.class, Event.class));
+                }
+            } catch (NoSuchMethodException e) {
+                // 继续查找下一个前缀
+            } catch (IllegalAccessException e) {
+                throw new MoonLakeException("The listener filter property '" + name + "' access exception.", e);
+            }
+        }
+        return null;
+    }
+
+    private static Collection<String> toStrings(Object value) {
+        // 脚本数组会以 Map 的形式传入, 单个值则作为只有一个元素的集合
+        Collection<?> values;
+        if(value instanceof Map)
+            values = ((Map<?, ?>) value).values();
+        else if(value instanceof Collection)
+            values = (Collection<?>) value;
+        else if(value instanceof Object[])
+            values = Arrays.asList((Object[]) value);
+        else
+            values = Collections.singleton(value);
+        List<String> result = new ArrayList<>(values.size());
+        values.forEach(element -> result.add(String.valueOf(element)));
+        return result;
+    }
+}
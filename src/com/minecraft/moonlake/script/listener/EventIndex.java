@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.listener;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+final class EventIndex {
+
+    private final static String KEY_PATH = "@path";
+    private final static String KEY_PATTERN = "@pattern";
+    private final static String KEY_SIZE = "@size";
+    private final static String KEY_MODIFIED = "@modified";
+    private final static String KEY_VERSION = "@version";
+
+    // 索引格式版本, 格式变化后旧的索引将被重新扫描
+    private final static String VERSION = "2";
+
+    private final File indexFile;
+    private final File jarFile;
+    private final String pattern;
+
+    EventIndex(File indexDir, File jarFile, String pattern) {
+        // 索引文件由 jar 路径以及匹配表达式确定, 同一个 jar 可以拥有多个索引
+        this.indexFile = new File(indexDir, "events-" + Integer.toHexString((jarFile.getAbsolutePath() + '|' + pattern).hashCode()) + ".properties");
+        this.jarFile = jarFile;
+        this.pattern = pattern;
+    }
+
+    Map<String, Type> load() {
+        // 读取索引: 不存在或者 jar 文件已变化则返回 null
+        if(!indexFile.exists())
+            return null;
+        Properties properties = new Properties();
+
+        try (InputStream input = Files.newInputStream(indexFile.toPath())) {
+            properties.load(input);
+        } catch (Exception e) {
+            return null;
+        }
+        if(!jarFile.getAbsolutePath().equals(properties.getProperty(KEY_PATH)) ||
+                !pattern.equals(properties.getProperty(KEY_PATTERN)) ||
+                !String.valueOf(jarFile.length()).equals(properties.getProperty(KEY_SIZE)) ||
+                !String.valueOf(jarFile.lastModified()).equals(properties.getProperty(KEY_MODIFIED)) ||
+                !VERSION.equals(properties.getProperty(KEY_VERSION)))
+            return null;
+        // 完整类名 -> 事件类型: class 或 abstract, 冒号之后为以逗号分隔的事件超类
+        Map<String, Type> indexMap = new LinkedHashMap<>();
+        for(String key : properties.stringPropertyNames()) {
+            if(key.charAt(0) == '@')
+                continue;
+            String value = properties.getProperty(key);
+            int index = value.indexOf(':');
+            if(index == -1)
+                return null;
+            String supers = value.substring(index + 1);
+            indexMap.put(key, new Type("class".equals(value.substring(0, index)), supers.isEmpty() ? Collections.emptyList() : Arrays.asList(supers.split(","))));
+        }
+        return indexMap;
+    }
+
+    void save(Map<String, Type> indexMap) {
+        // 保存索引以及 jar 文件的路径, 大小和修改时间
+        Properties properties = new Properties();
+        indexMap.forEach((className, type) -> properties.setProperty(className, (type.isConcrete() ? "class" : "abstract") + ':' + String.join(",", type.getSuperList())));
+        properties.setProperty(KEY_VERSION, VERSION);
+        properties.setProperty(KEY_PATH, jarFile.getAbsolutePath());
+        properties.setProperty(KEY_PATTERN, pattern);
+        properties.setProperty(KEY_SIZE, String.valueOf(jarFile.length()));
+        properties.setProperty(KEY_MODIFIED, String.valueOf(jarFile.lastModified()));
+
+        try (OutputStream output = Files.newOutputStream(indexFile.toPath())) {
+            properties.store(output, "MoonLakeScript event class index");
+        } catch (Exception e) {
+            // 保存失败则下次启动重新扫描
+            indexFile.delete();
+        }
+    }
+
+    final static class Type {
+
+        private final boolean concrete;
+        private final List<String> superList;
+
+        Type(boolean concrete, List<String> superList) {
+            this.concrete = concrete;
+            this.superList = superList;
+        }
+
+        boolean isConcrete() {
+            // 是否为可监听的具体事件类, 否则为只能订阅的抽象事件类
+            return concrete;
+        }
+
+        List<String> getSuperList() {
+            // 事件超类的完整类名, 由近到远, 不包括 Event
+            return superList;
+        }
+    }
+}
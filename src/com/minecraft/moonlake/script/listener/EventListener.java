@@ -20,19 +20,63 @@ package com.minecraft.moonlake.script.listener;
 
 import com.minecraft.moonlake.api.event.MoonLakeListener;
 import com.minecraft.moonlake.script.execute.Executor;
+import com.minecraft.moonlake.script.execute.ScriptBudget;
+import com.minecraft.moonlake.script.execute.ScriptMailbox;
+import com.minecraft.moonlake.script.metrics.ListenerMetrics;
 import org.bukkit.event.Event;
 import org.bukkit.event.EventException;
 import org.bukkit.event.Listener;
 import org.bukkit.plugin.EventExecutor;
 
+import java.lang.reflect.Modifier;
+import java.util.function.Predicate;
+
 public class EventListener<E extends Executor<E>> implements MoonLakeListener, EventExecutor, Comparable<EventListener<E>> {
 
     private final E executor;
     private final Class<? extends Event> event;
+    private final ScriptMailbox mailbox;
+    private final ScriptBudget budget;
+    private final boolean sync;
+    private final Predicate<Event> filter;
+    private final EventCoalescer coalescer;
+    private final boolean subtypes;
+    private volatile ListenerMetrics metrics;
 
     public EventListener(E executor, Class<? extends Event> event) {
+        this(executor, event, null, null, false);
+    }
+
+    public EventListener(E executor, Class<? extends Event> event, ScriptMailbox mailbox, ScriptBudget budget, boolean sync) {
+        this(executor, event, mailbox, budget, sync, null);
+    }
+
+    public EventListener(E executor, Class<? extends Event> event, ScriptMailbox mailbox, ScriptBudget budget, boolean sync, Predicate<Event> filter) {
+        this(executor, event, mailbox, budget, sync, filter, null);
+    }
+
+    public EventListener(E executor, Class<? extends Event> event, ScriptMailbox mailbox, ScriptBudget budget, boolean sync, Predicate<Event> filter, EventCoalescer coalescer) {
+        // 抽象事件类只能通过子类监听, 默认订阅其所有子类
+        this(executor, event, mailbox, budget, sync, filter, coalescer, Modifier.isAbstract(event.getModifiers()));
+    }
+
+    public EventListener(E executor, Class<? extends Event> event, ScriptMailbox mailbox, ScriptBudget budget, boolean sync, Predicate<Event> filter, EventCoalescer coalescer, boolean subtypes) {
         this.executor = executor;
         this.event = event;
+        this.mailbox = mailbox;
+        this.budget = budget;
+        this.sync = sync;
+        this.filter = filter;
+        this.coalescer = coalescer;
+        this.subtypes = subtypes;
+    }
+
+    public ListenerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(ListenerMetrics metrics) {
+        this.metrics = metrics;
     }
 
     public E getExecutor() {
@@ -43,22 +87,116 @@ public class EventListener<E extends Executor<E>> implements MoonLakeListener, E
         return event;
     }
 
+    public ScriptMailbox getMailbox() {
+        return mailbox;
+    }
+
+    public ScriptBudget getBudget() {
+        return budget;
+    }
+
+    public boolean isSync() {
+        return sync;
+    }
+
+    public Predicate<Event> getFilter() {
+        return filter;
+    }
+
+    public EventCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    public boolean isSubtypes() {
+        return subtypes;
+    }
+
+    public boolean accepts(Class<?> type) {
+        // 获取是否接收指定类的事件: 订阅子类则包括所有子类的事件, 否则只接收完全相同的事件类
+        return subtypes ? event.isAssignableFrom(type) : type == event;
+    }
+
     @Override
     public void execute(Listener listener, Event event) throws EventException {
+        // 处理器列表可能由超类共享, 只执行订阅的事件类
+        if(accepts(event.getClass()))
+            dispatch(listener, event);
+    }
+
+    public void dispatch(Listener listener, Event event) throws EventException {
+        // 执行已经匹配的事件: 由分发器通过分发表调用, 不再检查事件类
         try {
-            if(event.getClass() == this.event)
-                executor.execute(event);
+            if(filter != null && !filter.test(event))
+                // 过滤器不通过则不进入脚本引擎
+                return;
+            if(coalescer != null) {
+                // 合并模式只缓冲事件, 由 flush 在 tick 边界批量交给处理器
+                coalescer.offer(event);
+                return;
+            }
+            if(mailbox == null) {
+                // 没有邮箱则直接在当前线程执行
+                invoke(event);
+            } else if(event.isAsynchronous() && !sync) {
+                // 异步事件投递到脚本的邮箱, 由唯一的处理线程串行执行
+                mailbox.post(() -> invoke(event));
+            } else {
+                // 同步事件或者需要同步影响事件结果的处理器则与邮箱互斥执行
+                synchronized (mailbox.getLock()) {
+                    invoke(event);
+                }
+            }
         } catch (Exception e) {
             throw new EventException(e);
         }
     }
 
+    public void flush() throws EventException {
+        // 由主线程在 tick 边界调用: 将合并的事件数组交给处理器
+        if(coalescer == null)
+            return;
+        Event[] batch = coalescer.poll();
+        if(batch == null)
+            return;
+        try {
+            if(mailbox == null) {
+                invoke(batch);
+            } else {
+                synchronized (mailbox.getLock()) {
+                    invoke(batch);
+                }
+            }
+        } catch (Exception e) {
+            throw new EventException(e);
+        }
+    }
+
+    private Object invoke(Object event) throws Exception {
+        // 调用执行器: 存在预算则检查脚本是否被限流或挂起并累计耗时, 存在指标则记录调用
+        if(budget != null && !budget.acquire())
+            return null;
+        ListenerMetrics metrics = this.metrics;
+        if(budget == null && metrics == null)
+            return executor.execute(event);
+        long start = budget != null ? budget.enter(executor) : System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = executor.execute(event);
+            failed = false;
+            return result;
+        } finally {
+            long elapsed = budget != null ? budget.exit(start) : System.nanoTime() - start;
+            if(metrics != null)
+                metrics.record(elapsed, failed);
+        }
+    }
+
     @Override
     public int compareTo(EventListener<E> o) {
-        int compareFirst = event.hashCode() - o.event.hashCode();
+        int compareFirst = Integer.compare(event.hashCode(), o.event.hashCode());
         if(compareFirst != 0) return compareFirst;
 
-        int compareSecond = executor.getClass().hashCode() - o.executor.getClass().hashCode();
+        int compareSecond = Integer.compare(executor.getClass().hashCode(), o.executor.getClass().hashCode());
         if(compareSecond != 0) return compareSecond;
         return executor.compareTo(o.executor);
     }
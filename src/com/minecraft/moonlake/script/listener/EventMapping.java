@@ -25,13 +25,21 @@ import org.bukkit.event.Event;
 import org.bukkit.event.HandlerList;
 import org.bukkit.plugin.Plugin;
 
+import java.io.File;
+import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.regex.Pattern;
@@ -39,7 +47,15 @@ import java.util.regex.Pattern;
 public final class EventMapping {
 
     private final Set<Plugin> pluginSet = new HashSet<>();
-    private final Map<String, Class<? extends Event>> mappingMap = new HashMap<>();
+    private final Map<String, EventEntry> mappingMap = new HashMap<>();
+    private final Map<String, EventEntry> classMap = new HashMap<>();
+    // 子类索引: 事件类的完整类名 -> 自身以及所有子类中可监听的具体事件类
+    private final Map<String, Set<String>> subtypeMap = new HashMap<>();
+    private final Map<String, Boolean> hierarchyMap = new HashMap<>();
+    private File indexDir;
+
+    // 事件根类的内部类名
+    private final static String EVENT_CLASS = "org/bukkit/event/Event";
 
     // 静态实例
     public final static EventMapping INSTANCE = new EventMapping();
@@ -54,8 +70,30 @@ public final class EventMapping {
 
     public Class<? extends Event> getEventClass(String name) {
         // 获取指定事件的类对象
+        // 事件类只有在第一次获取时才会被加载
         Validate.isTrue(mappingMap.containsKey(name));
-        return mappingMap.get(name);
+        return mappingMap.get(name).resolve();
+    }
+
+    public List<Class<? extends Event>> getSubtypes(Class<? extends Event> clazz) {
+        // 获取指定事件类以及所有已映射的子类中可监听的具体事件类
+        // 订阅抽象事件类或父事件类时由这些事件类的处理器列表分发
+        Validate.notNull(clazz, "The event class object is null.");
+        Set<String> subtypeSet = subtypeMap.getOrDefault(clazz.getName(), Collections.emptySet());
+        List<Class<? extends Event>> subtypeList = new ArrayList<>(subtypeSet.size() + 1);
+        if(!Modifier.isAbstract(clazz.getModifiers()) && !subtypeSet.contains(clazz.getName()))
+            // 未映射的具体事件类
+            subtypeList.add(clazz);
+        for(String className : subtypeSet) {
+            try {
+                Class<? extends Event> subtype = classMap.get(className).resolve();
+                if(clazz.isAssignableFrom(subtype))
+                    subtypeList.add(subtype);
+            } catch (MoonLakeException e) {
+                // 无法加载的事件类则跳过, 不影响订阅其他子类
+            }
+        }
+        return subtypeList;
     }
 
     public boolean initializePlugin(String pluginName) {
@@ -79,6 +117,14 @@ public final class EventMapping {
 
     public void initalize() {
         // 初始化事件映射器
+        initalize(null);
+    }
+
+    public void initalize(File indexDir) {
+        // 初始化事件映射器, 索引目录不为 null 则使用持久化的事件类索引
+        if(indexDir != null && !indexDir.exists())
+            indexDir.mkdirs();
+        this.indexDir = indexDir;
         initializeBukkit();
         initializeSpigot();
     }
@@ -111,55 +157,174 @@ public final class EventMapping {
     private boolean initialize(final ClassLoader classLoader, URL path, String regex) {
         // 初始化指定 URL 路径的所有可监听事件类到映射器
         Validate.isTrue(path.getProtocol().equals("file"));
+        File file = new File(path.getFile());
+        EventIndex index = indexDir != null ? new EventIndex(indexDir, file, regex) : null;
+        Map<String, EventIndex.Type> indexMap = index != null ? index.load() : null;
+
+        if(indexMap != null) {
+            // 索引有效则 jar 文件未变化, 无需再次扫描
+            register(classLoader, indexMap);
+            return true;
+        }
         final Pattern pattern = Pattern.compile(regex);
+        final Map<String, ClassHeader> headerMap = new LinkedHashMap<>();
+        final Map<String, EventIndex.Type> foundMap = new LinkedHashMap<>();
 
-        try {
-            JarFile jarFile = new JarFile(path.getFile());
+        try (JarFile jarFile = new JarFile(file)) {
+            // 只读取类文件头部, 不会加载类也不会执行类的静态初始化
             jarFile.stream()
                     .filter((jarEntry -> pattern.matcher(jarEntry.getName()).matches()))
-                    .forEach((jarEntry) -> initialize(classLoader, jarEntry));
-            return true;
+                    .forEach((jarEntry) -> {
+                        ClassHeader header = readHeader(jarFile, jarEntry);
+                        if(header != null)
+                            headerMap.put(header.getName(), header);
+                    });
         } catch (Exception e) {
             throw new MoonLakeException(e.getMessage(), e);
         }
+        for(ClassHeader header : new ArrayList<>(headerMap.values())) {
+            // 类是 Event 的子类并且是 public 则映射: 具体事件类可以监听, 抽象事件类只能订阅其子类
+            if((header.isConcrete() || header.isAbstract()) && isEvent(classLoader, headerMap, header.getName()))
+                foundMap.put(header.getClassName(), new EventIndex.Type(header.isConcrete(), getSuperList(classLoader, headerMap, header)));
+        }
+        register(classLoader, foundMap);
+        if(index != null)
+            // 保存索引到文件, 下次启动 jar 未变化则直接读取
+            index.save(foundMap);
+        return true;
     }
 
-    @SuppressWarnings("unchecked")
-    private void initialize(ClassLoader classLoader, JarEntry jarEntry) {
-        // 初始化指定的 jarEntry 对象到事件映射器
-        try {
-            String name = jarEntry.getName().replace('/', '.');
-            Class<?> clazz = classLoader.loadClass(name.substring(0, name.length() - 6));
-            // 验证类的属性
-            Validate.isTrue(
-                    Event.class.isAssignableFrom(clazz) && Modifier.isPublic(clazz.getModifiers()) && !Modifier.isAbstract(clazz.getModifiers()),
-                    "The class '" + clazz.getName() + "' not is valid.");
-            // 只有类是 Event 的子类并且是 public 并且不是抽象类则加载
-            String finalName = clazz.getSimpleName();
-            mappingMap.putIfAbsent(finalName, (Class<? extends Event>) clazz);
+    private static ClassHeader readHeader(JarFile jarFile, JarEntry jarEntry) {
+        // 读取指定 jarEntry 的类文件头部
+        try (InputStream input = jarFile.getInputStream(jarEntry)) {
+            return ClassHeader.read(input);
         } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private void register(ClassLoader classLoader, Map<String, EventIndex.Type> typeMap) {
+        // 注册事件类到映射器, 按类名排序保证简单名冲突时的结果确定
+        // 每个具体事件类都会加入自身以及所有事件超类的子类索引
+        new TreeMap<>(typeMap).forEach((className, type) -> {
+            if(classMap.containsKey(className))
+                return;
+            EventEntry entry = new EventEntry(classLoader, className, type.isConcrete());
+            classMap.put(className, entry);
+            // 简单名冲突时具体事件类优先, 抽象事件类不能覆盖同名的具体事件类
+            String simpleName = className.substring(Math.max(className.lastIndexOf('.'), className.lastIndexOf('$')) + 1);
+            EventEntry existing = mappingMap.get(simpleName);
+            if(existing == null || (!existing.concrete && entry.concrete))
+                mappingMap.put(simpleName, entry);
+            if(!type.isConcrete())
+                return;
+            subtypeMap.computeIfAbsent(className, key -> new LinkedHashSet<>()).add(className);
+            for(String superName : type.getSuperList())
+                subtypeMap.computeIfAbsent(superName, key -> new LinkedHashSet<>()).add(className);
+        });
+    }
+
+    private List<String> getSuperList(ClassLoader classLoader, Map<String, ClassHeader> headerMap, ClassHeader header) {
+        // 获取指定事件类的所有事件超类, 不包括 Event
+        List<String> superList = new ArrayList<>();
+        for(String name = header.getSuperName(); name != null && !EVENT_CLASS.equals(name); ) {
+            superList.add(name.replace('/', '.'));
+            ClassHeader superHeader = findHeader(classLoader, headerMap, name);
+            name = superHeader != null ? superHeader.getSuperName() : null;
+        }
+        return superList;
+    }
+
+    private static ClassHeader findHeader(ClassLoader classLoader, Map<String, ClassHeader> headerMap, String name) {
+        // 获取指定类的类文件头部, 不在当前 jar 中则从类加载器读取类文件资源, 同样不会加载类
+        ClassHeader header = headerMap.get(name);
+        if(header == null) {
+            try (InputStream input = classLoader.getResourceAsStream(name + ".class")) {
+                header = input != null ? ClassHeader.read(input) : null;
+            } catch (Exception e) {
+                header = null;
+            }
+            if(header != null)
+                headerMap.put(name, header);
         }
+        return header;
+    }
+
+    private boolean isEvent(ClassLoader classLoader, Map<String, ClassHeader> headerMap, String name) {
+        // 根据超类链判断指定类是否为 Event 的子类, 结果会被缓存
+        if(name == null)
+            return false;
+        if(EVENT_CLASS.equals(name))
+            return true;
+        Boolean cached = hierarchyMap.get(name);
+        if(cached != null)
+            return cached;
+        ClassHeader header = findHeader(classLoader, headerMap, name);
+        boolean result = header != null && isEvent(classLoader, headerMap, header.getSuperName());
+        hierarchyMap.put(name, result);
+        return result;
     }
 
-    @SuppressWarnings("unchecked")
+    // 事件类的处理器列表缓存: HandlerList 对象或者解析失败的原因
+    private final static ClassValue<Object> HANDLER_CACHE = new ClassValue<Object>() {
+        @Override
+        protected Object computeValue(Class<?> type) {
+            return resolveHandler(type);
+        }
+    };
+
     public static HandlerList getHandler(Class<? extends Event> clazz) {
-        // 获取指定事件类的事件处理器
-        try {
-            // 获取事件类的 getHandlerList 函数
-            Method method = clazz.getDeclaredMethod("getHandlerList");
-            method.setAccessible(true);
-            return (HandlerList) method.invoke(null);
-        } catch (NoSuchMethodException e) {
-            // 函数不存在则获取类的超类看看有没有
-            Class<?> parent = clazz.getSuperclass();
-            Class<? extends Event> parentEvent = parent != null && Event.class.isAssignableFrom(parent) ? (Class<? extends Event>) parent : null;
-            if(parentEvent != null)
-                // 超类不为 null 则获取
-                return getHandler(parentEvent);
-            // 否则异常
-            throw new MoonLakeException(e.getMessage(), e);
-        } catch (Exception e) {
-            throw new MoonLakeException(e.getMessage(), e);
+        // 获取指定事件类的事件处理器, 每个事件类只会通过反射解析一次
+        Object handler = HANDLER_CACHE.get(clazz);
+        if(handler instanceof HandlerList)
+            return (HandlerList) handler;
+        // 否则异常
+        throw new MoonLakeException(handler.toString());
+    }
+
+    private static Object resolveHandler(Class<?> clazz) {
+        // 从事件类开始沿着超类链查找 getHandlerList 函数
+        for(Class<?> current = clazz; current != null && Event.class.isAssignableFrom(current); current = current.getSuperclass()) {
+            for(Method method : current.getDeclaredMethods()) {
+                if(!method.getName().equals("getHandlerList") || method.getParameterCount() != 0 || !Modifier.isStatic(method.getModifiers()))
+                    continue;
+                try {
+                    method.setAccessible(true);
+                    Object handler = method.invoke(null);
+                    if(handler instanceof HandlerList)
+                        return handler;
+                } catch (Exception e) {
+                    return "The event class '" + clazz.getName() + "' get handler list exception: " + e;
+                }
+            }
+        }
+        return "The event class '" + clazz.getName() + "' not has getHandlerList method.";
+    }
+
+    private final static class EventEntry {
+
+        private final ClassLoader classLoader;
+        private final String className;
+        private final boolean concrete;
+        private volatile Class<? extends Event> clazz;
+
+        private EventEntry(ClassLoader classLoader, String className, boolean concrete) {
+            this.classLoader = classLoader;
+            this.className = className;
+            this.concrete = concrete;
+        }
+
+        private Class<? extends Event> resolve() {
+            // 延迟加载事件类
+            Class<? extends Event> clazz = this.clazz;
+            if(clazz == null) {
+                try {
+                    this.clazz = clazz = classLoader.loadClass(className).asSubclass(Event.class);
+                } catch (Exception e) {
+                    throw new MoonLakeException("The event class '" + className + "' load exception.", e);
+                }
+            }
+            return clazz;
         }
     }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class ListenerMetrics {
+
+    // 延迟直方图: 第 i 个桶为 [2^(i-1), 2^i) 微秒
+    private final static int BUCKETS = 32;
+
+    private final String script;
+    private final String event;
+    private final String handler;
+    private final LongAdder invocations = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+    private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+    ListenerMetrics(String script, String event, String handler) {
+        this.script = script;
+        this.event = event;
+        this.handler = handler;
+        for(int i = 0; i < BUCKETS; i++)
+            histogram[i] = new LongAdder();
+    }
+
+    public String getScript() {
+        return script;
+    }
+
+    public String getEvent() {
+        return event;
+    }
+
+    public String getHandler() {
+        return handler;
+    }
+
+    public void record(long nanos, boolean error) {
+        // 记录一次调用: LongAdder 按线程分段计数, 异步事件之间不会竞争
+        invocations.increment();
+        if(error)
+            errors.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        histogram[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos / 1000L))].increment();
+    }
+
+    public long getInvocations() {
+        return invocations.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public long getPercentileMicros(double percentile) {
+        // 根据直方图获取近似的百分位延迟 (桶的上界)
+        long[] counts = new long[BUCKETS];
+        long total = 0L;
+        for(int i = 0; i < BUCKETS; i++)
+            total += counts[i] = histogram[i].sum();
+        if(total == 0L)
+            return 0L;
+        long target = (long) Math.ceil(total * percentile);
+        long seen = 0L;
+        for(int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if(seen >= target)
+                return 1L << i;
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    public void reset() {
+        invocations.reset();
+        errors.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+        for(LongAdder bucket : histogram)
+            bucket.reset();
+    }
+
+    @Override
+    public String toString() {
+        long invocations = getInvocations();
+        return script + '\t' + event + '\t' + handler + '\t' +
+                invocations + '\t' + getErrors() + '\t' +
+                (invocations > 0L ? getTotalNanos() / invocations / 1000L : 0L) + '\t' +
+                getPercentileMicros(0.5d) + '\t' + getPercentileMicros(0.99d) + '\t' + (getMaxNanos() / 1000L);
+    }
+}
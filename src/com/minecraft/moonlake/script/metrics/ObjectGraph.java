@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.metrics;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+final class ObjectGraph {
+
+    // 按照 64 位压缩指针估算对象大小
+    private final static int OBJECT_HEADER = 12;
+    private final static int ARRAY_HEADER = 16;
+    private final static int REFERENCE_SIZE = 4;
+
+    // 每个类的引用类型实例字段, 包括超类, 不包括弱引用的 referent
+    private final static ClassValue<Field[]> FIELD_CACHE = new ClassValue<Field[]>() {
+        @Override
+        protected Field[] computeValue(Class<?> type) {
+            List<Field> fieldList = new ArrayList<>();
+            for(Class<?> current = type; current != null; current = current.getSuperclass()) {
+                for(Field field : current.getDeclaredFields()) {
+                    if(Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive())
+                        continue;
+                    if(current == Reference.class && field.getName().equals("referent"))
+                        continue;
+                    try {
+                        field.setAccessible(true);
+                        fieldList.add(field);
+                    } catch (RuntimeException e) {
+                        // 无法访问的字段则跳过
+                    }
+                }
+            }
+            return fieldList.toArray(new Field[fieldList.size()]);
+        }
+    };
+
+    // 每个类的实例浅大小
+    private final static ClassValue<Long> SIZE_CACHE = new ClassValue<Long>() {
+        @Override
+        protected Long computeValue(Class<?> type) {
+            long size = OBJECT_HEADER;
+            for(Class<?> current = type; current != null; current = current.getSuperclass())
+                for(Field field : current.getDeclaredFields())
+                    if(!Modifier.isStatic(field.getModifiers()))
+                        size += sizeOf(field.getType());
+            return align(size);
+        }
+    };
+
+    private ObjectGraph() {
+    }
+
+    static long[] measure(Object root, Predicate<Object> boundary, int limit) {
+        // 估算从 root 出发可达的对象总大小, 不进入边界对象
+        // 返回值: { 字节数, 对象数, 是否超过上限 (1 或 0) }
+        Map<Object, Object> visited = new IdentityHashMap<>();
+        ArrayDeque<Object> queue = new ArrayDeque<>();
+        visited.put(root, root);
+        queue.add(root);
+        long bytes = 0L;
+        long objects = 0L;
+
+        while(!queue.isEmpty()) {
+            if(objects >= limit)
+                return new long[] { bytes, objects, 1L };
+            Object current = queue.poll();
+            bytes += shallowSize(current);
+            objects++;
+            forEachReference(current, (parent, via, child) -> {
+                if(!isBoundary(child, boundary) && visited.put(child, child) == null)
+                    queue.add(child);
+            });
+        }
+        return new long[] { bytes, objects, 0L };
+    }
+
+    static List<String> findPath(Map<Object, String> roots, Set<Object> targets, int limit) {
+        // 从根对象广度优先查找到任意一个目标对象的最短引用路径, 找不到则返回空列表
+        Map<Object, Object> parentMap = new IdentityHashMap<>();
+        Map<Object, Object> viaMap = new IdentityHashMap<>();
+        ArrayDeque<Object> queue = new ArrayDeque<>();
+        Object[] found = new Object[1];
+
+        for(Map.Entry<Object, String> entry : roots.entrySet()) {
+            Object root = entry.getKey();
+            parentMap.put(root, root);
+            viaMap.put(root, entry.getValue());
+            if(targets.contains(root))
+                return buildPath(parentMap, viaMap, root);
+            queue.add(root);
+        }
+        while(!queue.isEmpty() && found[0] == null && parentMap.size() < limit) {
+            Object current = queue.poll();
+            forEachReference(current, (parent, via, child) -> {
+                if(found[0] != null || isBoundary(child, null) || parentMap.containsKey(child))
+                    return;
+                parentMap.put(child, parent);
+                viaMap.put(child, via);
+                if(targets.contains(child))
+                    found[0] = child;
+                else
+                    queue.add(child);
+            });
+        }
+        return found[0] != null ? buildPath(parentMap, viaMap, found[0]) : Collections.emptyList();
+    }
+
+    private static List<String> buildPath(Map<Object, Object> parentMap, Map<Object, Object> viaMap, Object target) {
+        // 从目标对象沿父对象回溯到根对象, 每一步为 类名.字段 或 类名[下标]
+        LinkedList<String> path = new LinkedList<>();
+        path.add(target.getClass().getName());
+        Object current = target;
+        while(true) {
+            Object parent = parentMap.get(current);
+            Object via = viaMap.get(current);
+            if(parent == current) {
+                path.addFirst(via.toString());
+                break;
+            }
+            if(via instanceof Field)
+                path.addFirst(((Field) via).getDeclaringClass().getSimpleName() + "." + ((Field) via).getName());
+            else
+                path.addFirst(parent.getClass().getSimpleName().replace("[]", "") + "[" + via + "]");
+            current = parent;
+        }
+        return path;
+    }
+
+    private static boolean isBoundary(Object object, Predicate<Object> boundary) {
+        // 类, 类加载器以及线程由整个服务端共享, 不会进入
+        return object instanceof Class || object instanceof ClassLoader || object instanceof Thread || (boundary != null && boundary.test(object));
+    }
+
+    private static void forEachReference(Object object, ReferenceVisitor visitor) {
+        // 遍历对象的所有非 null 引用: 实例字段或数组元素
+        Class<?> type = object.getClass();
+        if(type.isArray()) {
+            if(type.getComponentType().isPrimitive())
+                return;
+            Object[] array = (Object[]) object;
+            for(int i = 0; i < array.length; i++) {
+                Object child = array[i];
+                if(child != null)
+                    visitor.visit(object, i, child);
+            }
+            return;
+        }
+        for(Field field : FIELD_CACHE.get(type)) {
+            Object child;
+            try {
+                child = field.get(object);
+            } catch (Exception e) {
+                continue;
+            }
+            if(child != null)
+                visitor.visit(object, field, child);
+        }
+    }
+
+    private static long shallowSize(Object object) {
+        // 获取对象的浅大小, 数组按照元素类型以及长度计算
+        Class<?> type = object.getClass();
+        if(type.isArray())
+            return align(ARRAY_HEADER + (long) Array.getLength(object) * sizeOf(type.getComponentType()));
+        return SIZE_CACHE.get(type);
+    }
+
+    private static long sizeOf(Class<?> type) {
+        if(type == long.class || type == double.class)
+            return 8L;
+        if(type == int.class || type == float.class)
+            return 4L;
+        if(type == short.class || type == char.class)
+            return 2L;
+        if(type == byte.class || type == boolean.class)
+            return 1L;
+        return REFERENCE_SIZE;
+    }
+
+    private static long align(long size) {
+        return (size + 7L) & ~7L;
+    }
+
+    @FunctionalInterface
+    private interface ReferenceVisitor {
+
+        void visit(Object parent, Object via, Object child);
+    }
+}
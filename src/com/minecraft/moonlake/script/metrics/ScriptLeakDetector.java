@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.metrics;
+
+import com.minecraft.moonlake.script.ScriptPlugin;
+import com.minecraft.moonlake.script.api.MoonLakeScript;
+import com.minecraft.moonlake.script.api.MoonLakeScriptLoader;
+import com.minecraft.moonlake.script.bus.MessageBus;
+import com.minecraft.moonlake.script.execute.ScriptScheduler;
+import com.minecraft.moonlake.script.execute.ScriptWatchdog;
+import com.minecraft.moonlake.script.listener.EventDispatcher;
+import com.minecraft.moonlake.script.state.StateEvictor;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.event.HandlerList;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredListener;
+
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public final class ScriptLeakDetector {
+
+    // 单次遍历最多访问的对象数量
+    private final static int LIMIT = 2000000;
+
+    // 脚本引擎运行时的类名: 由共享引擎的所有脚本共用, 估算脚本内存时不进入
+    private final static Set<String> RUNTIME_CLASSES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "jdk.nashorn.internal.runtime.Context",
+            "org.graalvm.polyglot.Engine",
+            "com.oracle.truffle.polyglot.PolyglotEngineImpl"
+    )));
+
+    private final ScriptPlugin plugin;
+    private final long delay;
+    private final Queue<Tracked> trackedQueue = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService executor;
+    private volatile boolean closed;
+
+    public ScriptLeakDetector(ScriptPlugin plugin, long delay) {
+        // delay 为卸载后多少秒检查, 0 则只能通过命令检查
+        this.plugin = plugin;
+        this.delay = TimeUnit.SECONDS.toMillis(delay);
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MoonLakeScript-LeakDetector");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        if(delay > 0L)
+            this.executor.scheduleWithFixedDelay(() -> {
+                // 异常不能抛出, 否则之后的检查将不再执行
+                try {
+                    check(false).forEach(plugin.getLogger()::warning);
+                } catch (Throwable e) {
+                    plugin.getLogger().log(Level.WARNING, "The script leak check exception", e);
+                }
+            }, delay, delay, TimeUnit.SECONDS);
+    }
+
+    public void track(MoonLakeScript script) {
+        // 使用弱引用追踪已卸载的脚本, 全局对象以及非共享模式的引擎
+        if(closed)
+            return;
+        MoonLakeScriptLoader loader = plugin.getScriptLoader();
+        boolean shared = loader != null && loader.isShared();
+        trackedQueue.add(new Tracked(script, script.getContext().getBindings(ScriptContext.ENGINE_SCOPE), script.getEngine(), shared, gcCounts()));
+    }
+
+    public int getTrackedCount() {
+        return trackedQueue.size();
+    }
+
+    public void check(Consumer<List<String>> callback) {
+        // 执行一次完整的 GC 后立即检查所有已卸载的脚本, 结果在主线程交给 callback
+        submit(() -> {
+            System.gc();
+            List<String> lines = check(true);
+            if(lines.isEmpty())
+                lines.add("The " + trackedQueue.size() + " unloaded scripts not found leak.");
+            return lines;
+        }, callback);
+    }
+
+    public void estimate(String name, Consumer<List<String>> callback) {
+        // 估算已加载脚本保留的堆内存, 名称为 null 则全部, 结果在主线程交给 callback
+        submit(() -> {
+            List<String> lines = new ArrayList<>();
+            MoonLakeScriptLoader loader = plugin.getScriptLoader();
+            if(loader == null)
+                return lines;
+            for(MoonLakeScript script : loader.getScripts()) {
+                if(name == null || script.getName().equals(name))
+                    lines.add(script.getName() + ": " + format(measure(script)) + ", " + script.getListenerCount() + " listeners, " + script.getTaskCount() + " tasks");
+            }
+            if(lines.isEmpty())
+                lines.add("The script not exists.");
+            return lines;
+        }, callback);
+    }
+
+    private void submit(Callable<List<String>> task, Consumer<List<String>> callback) {
+        // 在检测线程遍历对象图, 不阻塞服务器主线程
+        executor.execute(() -> {
+            List<String> lines;
+            try {
+                lines = task.call();
+            } catch (Throwable e) {
+                plugin.getLogger().log(Level.WARNING, "The script memory inspection exception", e);
+                lines = Collections.singletonList("The script memory inspection exception: " + e);
+            }
+            final List<String> result = lines;
+            plugin.getServer().getScheduler().runTask(plugin, () -> callback.accept(result));
+        });
+    }
+
+    private List<String> check(boolean force) {
+        // 检查已卸载的脚本: 经过 GC 后仍然可达则报告引用路径, 每个脚本只报告一次
+        List<String> lines = new ArrayList<>();
+        long[] counts = gcCounts();
+        long now = System.currentTimeMillis();
+        MoonLakeScriptLoader loader = plugin.getScriptLoader();
+        Map<Object, String> roots = null;
+        Iterator<Tracked> iterator = trackedQueue.iterator();
+
+        while(iterator.hasNext()) {
+            Tracked tracked = iterator.next();
+            Set<Object> targets = tracked.targets(loader);
+            if(targets.isEmpty()) {
+                // 已经被回收
+                iterator.remove();
+                continue;
+            }
+            if(!force && (now - tracked.unloaded < delay || !tracked.collectedSince(counts)))
+                // 还没有经过一次完整的 GC
+                continue;
+            iterator.remove();
+            if(roots == null)
+                roots = roots();
+            List<String> path = ObjectGraph.findPath(roots, targets, LIMIT);
+            Object retained = tracked.script.get();
+            String size = retained != null ? ", retained " + format(ObjectGraph.measure(retained, boundary(retained), LIMIT)) : "";
+            lines.add("The script '" + tracked.name + "' unloaded " + ((now - tracked.unloaded) / 1000L) + "s ago is still reachable after GC" + size + ".");
+            if(path.isEmpty() && tracked.isEngineInUse(loader))
+                // 引擎的已编译代码 (例如调用点缓存) 可能引用上一次加载的脚本, 脚本文件修改后释放
+                lines.add("  not found the reference from event listeners or this plugin, the engine is still in use and its compiled code may hold the script until the script file changed.");
+            else if(path.isEmpty())
+                lines.add("  not found the reference from event listeners or this plugin, may be held by a static field or another plugin.");
+            else
+                lines.add("  " + String.join(" -> ", path));
+            targets.clear();
+        }
+        return lines;
+    }
+
+    private Map<Object, String> roots() {
+        // 引用路径的根对象: 所有 Bukkit 事件处理器列表的已注册监听器, 以及本插件
+        Map<Object, String> roots = new IdentityHashMap<>();
+        for(HandlerList handlerList : HandlerList.getHandlerLists()) {
+            for(RegisteredListener registered : handlerList.getRegisteredListeners()) {
+                String pluginName = registered.getPlugin() != null ? registered.getPlugin().getName() : "?";
+                roots.put(registered, "RegisteredListener(" + pluginName + ", " + registered.getListener().getClass().getName() + ")");
+            }
+        }
+        roots.put(plugin, plugin.getName());
+        return roots;
+    }
+
+    private long[] measure(MoonLakeScript script) {
+        return ObjectGraph.measure(script, boundary(script), LIMIT);
+    }
+
+    private Predicate<Object> boundary(Object root) {
+        // 估算脚本内存时不进入其他脚本以及插件, 服务端, 引擎运行时等共享的对象
+        return object -> (object instanceof MoonLakeScript && object != root)
+                || object instanceof ScriptEngine
+                || object instanceof Plugin
+                || object instanceof Server
+                || object instanceof World
+                || object instanceof Entity
+                || object instanceof Logger
+                || object instanceof ExecutorService
+                || object instanceof EventDispatcher
+                || object instanceof ScriptScheduler
+                || object instanceof ScriptWatchdog
+                || object instanceof StateEvictor
+                || object instanceof MessageBus
+                || object instanceof ScriptMetrics
+                || object instanceof ScriptLeakDetector
+                || RUNTIME_CLASSES.contains(object.getClass().getName());
+    }
+
+    public void shutdown() {
+        // 关闭检测线程, 之后卸载的脚本不再追踪
+        closed = true;
+        executor.shutdownNow();
+        trackedQueue.clear();
+    }
+
+    private static String format(long[] measured) {
+        // 格式化估算结果: 约多少 KB 以及对象数量, 超过遍历上限则为下限
+        return "~" + (measured[0] / 1024L) + "KB" + (measured[2] != 0L ? "+" : "") + " (" + measured[1] + " objects)";
+    }
+
+    private static long[] gcCounts() {
+        // 获取所有垃圾收集器的收集次数
+        List<GarbageCollectorMXBean> beans = ManagementFactory.getGarbageCollectorMXBeans();
+        long[] counts = new long[beans.size()];
+        for(int i = 0; i < counts.length; i++)
+            counts[i] = beans.get(i).getCollectionCount();
+        return counts;
+    }
+
+    private final static class Tracked {
+
+        private final String name;
+        private final long unloaded;
+        private final long[] counts;
+        private final WeakReference<MoonLakeScript> script;
+        private final WeakReference<Object> globals;
+        private final WeakReference<ScriptEngine> engine;
+        private final boolean shared;
+
+        private Tracked(MoonLakeScript script, Object globals, ScriptEngine engine, boolean shared, long[] counts) {
+            this.name = script.getName();
+            this.unloaded = System.currentTimeMillis();
+            this.counts = counts;
+            this.script = new WeakReference<>(script);
+            this.globals = new WeakReference<>(globals);
+            this.engine = new WeakReference<>(engine);
+            this.shared = shared;
+        }
+
+        private boolean isEngineInUse(MoonLakeScriptLoader loader) {
+            // 共享模式的引擎一直由其他脚本使用
+            ScriptEngine engine = this.engine.get();
+            return engine != null && (shared || (loader != null && loader.isEngineInUse(engine)));
+        }
+
+        private boolean collectedSince(long[] current) {
+            // 每个垃圾收集器 (包括老年代) 都至少收集过一次, 弱引用仍然存在才能说明对象仍然可达
+            for(int i = 0; i < counts.length && i < current.length; i++)
+                if(current[i] >= 0L && current[i] <= counts[i])
+                    return false;
+            return true;
+        }
+
+        private Set<Object> targets(MoonLakeScriptLoader loader) {
+            // 获取仍然存活的对象, 编译缓存或其他脚本仍在使用的引擎不算泄漏
+            Set<Object> targets = Collections.newSetFromMap(new IdentityHashMap<>());
+            Object script = this.script.get();
+            Object globals = this.globals.get();
+            if(script != null)
+                targets.add(script);
+            if(globals != null)
+                targets.add(globals);
+            if(!shared && !isEngineInUse(loader) && this.engine.get() != null)
+                targets.add(this.engine.get());
+            return targets;
+        }
+    }
+}
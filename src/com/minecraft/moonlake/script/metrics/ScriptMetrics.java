@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.metrics;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+public final class ScriptMetrics implements ScriptMetricsMBean {
+
+    public final static String HEADER = "script\tevent\thandler\tinvocations\terrors\tmean(us)\tp50(us)\tp99(us)\tmax(us)";
+
+    private final Map<String, ListenerMetrics> metricsMap = new ConcurrentHashMap<>();
+    private ObjectName objectName;
+
+    public ScriptMetrics() {
+    }
+
+    public ListenerMetrics get(String script, String event, String handler) {
+        // 获取或创建指定脚本, 事件以及处理器的指标, 重新加载后继续累计
+        return metricsMap.computeIfAbsent(script + '|' + event + '|' + handler, (key) -> new ListenerMetrics(script, event, handler));
+    }
+
+    public List<ListenerMetrics> getMetrics(String script) {
+        // 获取指定脚本的指标, 脚本为 null 则全部, 按总耗时降序
+        return metricsMap.values().stream()
+                .filter((metrics) -> script == null || metrics.getScript().equals(script))
+                .sorted(Comparator.comparingLong(ListenerMetrics::getTotalNanos).reversed())
+                .collect(Collectors.toList());
+    }
+
+    public void dump(File file) throws IOException {
+        // 导出所有指标到文件, 先写入临时文件再替换, 避免读取到不完整的内容
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        getMetrics(null).forEach((metrics) -> lines.add(metrics.toString()));
+        File temp = new File(file.getPath() + ".tmp");
+        Files.write(temp.toPath(), lines, StandardCharsets.UTF_8);
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public void registerMBean() throws Exception {
+        // 注册到 JMX 平台 MBean 服务器
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        objectName = new ObjectName("com.minecraft.moonlake.script:type=ScriptMetrics");
+        if(server.isRegistered(objectName))
+            server.unregisterMBean(objectName);
+        server.registerMBean(this, objectName);
+    }
+
+    public void unregisterMBean() {
+        // 从 JMX 平台 MBean 服务器卸载
+        try {
+            if(objectName != null)
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+        }
+        objectName = null;
+    }
+
+    @Override
+    public int getListenerCount() {
+        return metricsMap.size();
+    }
+
+    @Override
+    public long getTotalInvocations() {
+        return metricsMap.values().stream().mapToLong(ListenerMetrics::getInvocations).sum();
+    }
+
+    @Override
+    public long getTotalErrors() {
+        return metricsMap.values().stream().mapToLong(ListenerMetrics::getErrors).sum();
+    }
+
+    @Override
+    public long getTotalNanos() {
+        return metricsMap.values().stream().mapToLong(ListenerMetrics::getTotalNanos).sum();
+    }
+
+    @Override
+    public String[] getListeners() {
+        return getMetrics(null).stream().map(ListenerMetrics::toString).toArray(String[]::new);
+    }
+
+    @Override
+    public void reset() {
+        metricsMap.values().forEach(ListenerMetrics::reset);
+    }
+}
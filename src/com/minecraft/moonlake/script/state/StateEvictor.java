@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.state;
+
+import com.minecraft.moonlake.MoonLakeAPI;
+import com.minecraft.moonlake.api.event.MoonLakeListener;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDeathEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+public final class StateEvictor implements MoonLakeListener, EventExecutor {
+
+    private final Set<StateMap> mapSet = new CopyOnWriteArraySet<>();
+
+    public void register(StateMap map) {
+        mapSet.add(map);
+    }
+
+    public void unregister(StateMap map) {
+        mapSet.remove(map);
+    }
+
+    public void registerEvents(Plugin plugin) {
+        // 以 MONITOR 优先度监听, 脚本的处理器在淘汰之前仍然可以读取状态
+        MoonLakeAPI.registerEvent(PlayerQuitEvent.class, this, EventPriority.MONITOR, this, plugin, false);
+        MoonLakeAPI.registerEvent(EntityDeathEvent.class, this, EventPriority.MONITOR, this, plugin, false);
+        MoonLakeAPI.registerEvent(ChunkUnloadEvent.class, this, EventPriority.MONITOR, this, plugin, true);
+        MoonLakeAPI.registerEvent(WorldUnloadEvent.class, this, EventPriority.MONITOR, this, plugin, true);
+    }
+
+    public void sweep() {
+        // 由调度器定时调用, 移除所有过期的条目
+        for(StateMap map : mapSet)
+            map.sweep();
+    }
+
+    @Override
+    public void execute(Listener listener, Event event) {
+        if(mapSet.isEmpty())
+            return;
+        if(event instanceof PlayerQuitEvent) {
+            // 玩家退出: 移除玩家表以及实体表中的玩家
+            evict(((PlayerQuitEvent) event).getPlayer(), true);
+        } else if(event instanceof EntityDeathEvent) {
+            // 实体死亡: 玩家死亡后仍然在线, 只移除非玩家实体
+            Entity entity = ((EntityDeathEvent) event).getEntity();
+            if(!(entity instanceof Player))
+                evict(entity, false);
+        } else if(event instanceof ChunkUnloadEvent) {
+            // 区块卸载: 区块内的实体从世界移除
+            for(Entity entity : ((ChunkUnloadEvent) event).getChunk().getEntities())
+                if(!(entity instanceof Player))
+                    evict(entity, false);
+        } else if(event instanceof WorldUnloadEvent) {
+            // 世界卸载: 世界内的所有实体
+            for(Entity entity : ((WorldUnloadEvent) event).getWorld().getEntities())
+                evict(entity, entity instanceof Player);
+        }
+    }
+
+    private void evict(Entity entity, boolean player) {
+        UUID uniqueId = player ? entity.getUniqueId() : null;
+        int entityId = entity.getEntityId();
+        for(StateMap map : mapSet) {
+            if(map.getType() == StateMap.Type.ENTITY)
+                map.remove(0L, entityId);
+            else if(uniqueId != null)
+                map.remove(uniqueId.getMostSignificantBits(), uniqueId.getLeastSignificantBits());
+        }
+    }
+}
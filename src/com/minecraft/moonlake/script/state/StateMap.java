@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2017 The MoonLake Authors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.minecraft.moonlake.script.state;
+
+import com.minecraft.moonlake.validate.Validate;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+public final class StateMap {
+
+    public enum Type {
+
+        // 以玩家 UUID 为键
+        PLAYER,
+        // 以实体 id 为键
+        ENTITY,
+        ;
+    }
+
+    // 容量超过此比例则扩容
+    private final static float LOAD_FACTOR = 0.5f;
+    // 超出最大数量时抽样淘汰的数量
+    private final static int SAMPLES = 8;
+
+    private final String name;
+    private final Type type;
+    private final long ttl;
+    private final int max;
+    // 开放寻址的线性探测表: 键为两个 long, 值为 null 表示空槽
+    private long[] highs;
+    private long[] lows;
+    private long[] stamps;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    public StateMap(String name, Type type, long ttl, int max) {
+        // 状态表: ttl 为条目最后一次写入后的存活时间 (毫秒), max 为最大条目数量, 0 则不限制
+        Validate.notNull(type, "The state map type object is null.");
+        this.name = name;
+        this.type = type;
+        this.ttl = Math.max(ttl, 0L);
+        this.max = Math.max(max, 0);
+        allocate(16);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public Object get(Object key) {
+        return getOrDefault(key, null);
+    }
+
+    public synchronized Object getOrDefault(Object key, Object def) {
+        long high = high(key), low = low(key);
+        int index = find(high, low);
+        if(index < 0)
+            return def;
+        if(ttl > 0L && expired(index, now())) {
+            delete(index);
+            return def;
+        }
+        return values[index];
+    }
+
+    public synchronized boolean contains(Object key) {
+        int index = find(high(key), low(key));
+        if(index < 0)
+            return false;
+        if(ttl > 0L && expired(index, now())) {
+            delete(index);
+            return false;
+        }
+        return true;
+    }
+
+    public synchronized Object put(Object key, Object value) {
+        // 设置状态, 值为 null 则移除
+        if(value == null)
+            return remove(key);
+        long high = high(key), low = low(key);
+        // 没有存活时间以及数量限制则不需要写入时间
+        long now = ttl > 0L || max > 0 ? now() : 0L;
+        int index = find(high, low);
+        if(index >= 0) {
+            Object old = values[index];
+            values[index] = value;
+            stamps[index] = now;
+            return old;
+        }
+        if(max > 0 && size >= max)
+            evict(now);
+        if(size + 1 > (mask + 1) * LOAD_FACTOR)
+            allocate((mask + 1) * 2);
+        insert(high, low, value, now);
+        return null;
+    }
+
+    public synchronized Object remove(Object key) {
+        int index = find(high(key), low(key));
+        if(index < 0)
+            return null;
+        Object old = values[index];
+        delete(index);
+        return old;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    synchronized void remove(long high, long low) {
+        // 由淘汰器调用: 按原始键移除
+        int index = find(high, low);
+        if(index >= 0)
+            delete(index);
+    }
+
+    synchronized int sweep() {
+        // 移除所有过期的条目, 返回移除的数量
+        if(ttl <= 0L || size == 0)
+            return 0;
+        long now = now();
+        int removed = 0;
+        for(int index = 0; index <= mask; ) {
+            if(values[index] != null && expired(index, now)) {
+                // 删除时后面的条目可能移动到当前槽, 所以不前进
+                delete(index);
+                removed++;
+            } else {
+                index++;
+            }
+        }
+        return removed;
+    }
+
+    private long high(Object key) {
+        // 玩家表的键为 UUID 的高位, 实体表固定为 0
+        if(type == Type.ENTITY)
+            return 0L;
+        return uuid(key).getMostSignificantBits();
+    }
+
+    private long low(Object key) {
+        if(type == Type.ENTITY)
+            return entityId(key);
+        return uuid(key).getLeastSignificantBits();
+    }
+
+    private static UUID uuid(Object key) {
+        // 玩家表接受 Player, UUID 以及 UUID 字符串
+        if(key instanceof UUID)
+            return (UUID) key;
+        if(key instanceof Player)
+            return ((Player) key).getUniqueId();
+        if(key instanceof String)
+            return UUID.fromString((String) key);
+        throw new IllegalArgumentException("The player state key must be player, uuid or uuid string: " + key);
+    }
+
+    private static int entityId(Object key) {
+        // 实体表接受实体 id 以及 Entity
+        if(key instanceof Number)
+            return ((Number) key).intValue();
+        if(key instanceof Entity)
+            return ((Entity) key).getEntityId();
+        throw new IllegalArgumentException("The entity state key must be entity or entity id: " + key);
+    }
+
+    private static int hash(long high, long low) {
+        // 64 位混合函数, 避免相邻实体 id 聚集在同一段
+        long hash = high * 0x9E3779B97F4A7C15L ^ low;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+
+    private int find(long high, long low) {
+        for(int index = hash(high, low) & mask; values[index] != null; index = (index + 1) & mask)
+            if(highs[index] == high && lows[index] == low)
+                return index;
+        return -1;
+    }
+
+    private void insert(long high, long low, Object value, long stamp) {
+        int index = hash(high, low) & mask;
+        while(values[index] != null)
+            index = (index + 1) & mask;
+        highs[index] = high;
+        lows[index] = low;
+        values[index] = value;
+        stamps[index] = stamp;
+        size++;
+    }
+
+    private void delete(int index) {
+        // 后移删除: 将后续探测链上的条目移回, 不需要墓碑标记
+        values[index] = null;
+        size--;
+        int next = (index + 1) & mask;
+        while(values[next] != null) {
+            int home = hash(highs[next], lows[next]) & mask;
+            // 条目的初始槽不在 (index, next] 范围内则可以移动到 index
+            if(((next - home) & mask) >= ((next - index) & mask)) {
+                highs[index] = highs[next];
+                lows[index] = lows[next];
+                values[index] = values[next];
+                stamps[index] = stamps[next];
+                values[next] = null;
+                index = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    private void evict(long now) {
+        // 抽样淘汰: 从随机位置开始取若干个条目, 优先淘汰过期的, 否则淘汰最久未写入的
+        int victim = -1;
+        int sampled = 0;
+        int index = ThreadLocalRandom.current().nextInt(mask + 1);
+        for(int i = 0; i <= mask && sampled < SAMPLES; i++, index = (index + 1) & mask) {
+            if(values[index] == null)
+                continue;
+            if(expired(index, now)) {
+                victim = index;
+                break;
+            }
+            if(victim < 0 || stamps[index] < stamps[victim])
+                victim = index;
+            sampled++;
+        }
+        if(victim >= 0)
+            delete(victim);
+    }
+
+    private boolean expired(int index, long now) {
+        return ttl > 0L && now - stamps[index] >= ttl;
+    }
+
+    private void allocate(int capacity) {
+        // 按新的容量重建表
+        long[] oldHighs = highs, oldLows = lows, oldStamps = stamps;
+        Object[] oldValues = values;
+        highs = new long[capacity];
+        lows = new long[capacity];
+        stamps = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        size = 0;
+        if(oldValues != null)
+            for(int index = 0; index < oldValues.length; index++)
+                if(oldValues[index] != null)
+                    insert(oldHighs[index], oldLows[index], oldValues[index], oldStamps[index]);
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000L;
+    }
+}